@@ -28,12 +28,15 @@ import org.reactivestreams.Processor;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collector;
 
 /**
@@ -42,9 +45,49 @@ import java.util.stream.Collector;
 public class AkkaEngine implements ReactiveStreamsEngine {
 
   final Materializer materializer;
+  private final int completionStageParallelism;
+  private final BlueprintCache blueprints;
 
   public AkkaEngine(Materializer materializer) {
+    this(materializer, 1);
+  }
+
+  /**
+   * Create an engine.
+   *
+   * @param materializer The materializer to run streams with.
+   * @param completionStageParallelism The maximum number of completion stages that a flat map completion stage may
+   *                                   have in flight at once. Results are still emitted in upstream order.
+   */
+  public AkkaEngine(Materializer materializer, int completionStageParallelism) {
+    this(materializer, completionStageParallelism, 0);
+  }
+
+  /**
+   * Create an engine.
+   * <p>
+   * The Akka flows and sinks built for graphs are blueprints that can be materialized any number of times. When the
+   * blueprint cache is enabled, the flows and sinks built for the stages of graphs are cached, so that when stages with
+   * the same structure, that is, the same types of stages with the same functions, are built again, such as the stages
+   * following the source of a graph returned by a flat map function, their blueprint is reused rather than built again.
+   * Sources, and publisher, processor and subscriber stages, are specific to each graph, and so are never cached.
+   *
+   * @param materializer The materializer to run streams with.
+   * @param completionStageParallelism The maximum number of completion stages that a flat map completion stage may
+   *                                   have in flight at once. Results are still emitted in upstream order.
+   * @param blueprintCacheSize The maximum number of blueprints to cache, evicting the least recently used when full, or
+   *                           zero to disable the cache.
+   */
+  public AkkaEngine(Materializer materializer, int completionStageParallelism, int blueprintCacheSize) {
+    if (completionStageParallelism < 1) {
+      throw new IllegalArgumentException("Completion stage parallelism must be at least one");
+    }
+    if (blueprintCacheSize < 0) {
+      throw new IllegalArgumentException("Blueprint cache size must not be negative");
+    }
     this.materializer = materializer;
+    this.completionStageParallelism = completionStageParallelism;
+    this.blueprints = blueprintCacheSize == 0 ? null : new BlueprintCache(blueprintCacheSize);
   }
 
   @Override
@@ -68,18 +111,12 @@ public class AkkaEngine implements ReactiveStreamsEngine {
   }
 
   private <T> Source<T, NotUsed> buildSource(Graph graph) throws UnsupportedStageException {
-    Source source = null;
-    Flow flow = Flow.create();
-    for (Stage stage : graph.getStages()) {
-      if (source == null) {
-        source = toSource(stage);
-      }
-      else {
-        flow = applyStage(flow, stage);
-      }
+    List<Stage> stages = asList(graph.getStages());
+    Source source = toSource(stages.get(0));
+    if (stages.size() == 1) {
+      return source;
     }
-    return (Source) source
-        .via(flow);
+    return source.via(buildFlow(stages.subList(1, stages.size())));
   }
 
   @Override
@@ -97,8 +134,19 @@ public class AkkaEngine implements ReactiveStreamsEngine {
   }
 
   private <T, R> Sink<T, CompletionStage<R>> buildSink(Graph graph) throws UnsupportedStageException {
+    return buildSink(asList(graph.getStages()));
+  }
+
+  private <T, R> Sink<T, CompletionStage<R>> buildSink(List<Stage> stages) throws UnsupportedStageException {
+    if (blueprints != null) {
+      return blueprints.get(BlueprintCache.Kind.SINK, stages, this::createSink);
+    }
+    return createSink(stages);
+  }
+
+  private <T, R> Sink<T, CompletionStage<R>> createSink(List<Stage> stages) throws UnsupportedStageException {
     Flow flow = Flow.create();
-    for (Stage stage : graph.getStages()) {
+    for (Stage stage : stages) {
       if (stage.hasOutlet()) {
         flow = applyStage(flow, stage);
       }
@@ -131,8 +179,19 @@ public class AkkaEngine implements ReactiveStreamsEngine {
   }
 
   private <T, R> Flow<T, R, NotUsed> buildFlow(Graph graph) throws UnsupportedStageException {
+    return buildFlow(asList(graph.getStages()));
+  }
+
+  private <T, R> Flow<T, R, NotUsed> buildFlow(List<Stage> stages) throws UnsupportedStageException {
+    if (blueprints != null) {
+      return blueprints.get(BlueprintCache.Kind.FLOW, stages, this::createFlow);
+    }
+    return createFlow(stages);
+  }
+
+  private <T, R> Flow<T, R, NotUsed> createFlow(List<Stage> stages) throws UnsupportedStageException {
     Flow flow = Flow.create();
-    for (Stage stage : graph.getStages()) {
+    for (Stage stage : stages) {
       flow = applyStage(flow, stage);
     }
     return flow;
@@ -151,21 +210,16 @@ public class AkkaEngine implements ReactiveStreamsEngine {
   }
 
   private <T> RunnableGraph<CompletionStage<T>> buildRunnableGraph(Graph graph) throws UnsupportedStageException {
-    Source source = null;
-    Flow flow = Flow.create();
-    for (Stage stage : graph.getStages()) {
-      if (source == null) {
-        source = toSource(stage);
-      }
-      else if (stage.hasOutlet()) {
-        flow = applyStage(flow, stage);
-      }
-      else {
-        return source.via(flow).toMat(toSink(stage), Keep.right());
-      }
+    List<Stage> stages = asList(graph.getStages());
+    if (stages.size() < 2) {
+      throw new IllegalStateException("Graph did not have terminal stage");
     }
+    Source source = toSource(stages.get(0));
+    return source.toMat(buildSink(stages.subList(1, stages.size())), Keep.right());
+  }
 
-    throw new IllegalStateException("Graph did not have terminal stage");
+  private static List<Stage> asList(Collection<Stage> stages) {
+    return stages instanceof List ? (List<Stage>) stages : new ArrayList<>(stages);
   }
 
   private Flow applyStage(Flow flow, Stage stage) {
@@ -174,21 +228,22 @@ public class AkkaEngine implements ReactiveStreamsEngine {
       return flow.map(mapper::apply);
     }
     else if (stage instanceof Stage.Filter) {
-      Predicate<Object> predicate = (Predicate) (((Stage.Filter) stage).getPredicate()).get();
-      return flow.filter(predicate::test);
+      // The predicate is supplied each time the blueprint is materialized, since it may be stateful
+      Supplier<Predicate<Object>> predicate = (Supplier) ((Stage.Filter) stage).getPredicate();
+      return flow.via(SuppliedPredicateStage.filter(predicate));
     }
     else if (stage instanceof Stage.FlatMap) {
       Function<Object, Graph> mapper = (Function) ((Stage.FlatMap) stage).getMapper();
       return flow.flatMapConcat(e -> buildSource(mapper.apply(e)));
     }
     else if (stage instanceof Stage.TakeWhile) {
-      Predicate<Object> predicate = (Predicate) (((Stage.TakeWhile) stage).getPredicate()).get();
+      Supplier<Predicate<Object>> predicate = (Supplier) ((Stage.TakeWhile) stage).getPredicate();
       boolean inclusive = ((Stage.TakeWhile) stage).isInclusive();
-      return flow.takeWhile(predicate::test, inclusive);
+      return flow.via(SuppliedPredicateStage.takeWhile(predicate, inclusive));
     }
     else if (stage instanceof Stage.FlatMapCompletionStage) {
       Function<Object, CompletionStage<Object>> mapper = (Function) ((Stage.FlatMapCompletionStage) stage).getMapper();
-      return flow.mapAsync(1, mapper::apply);
+      return flow.mapAsync(completionStageParallelism, mapper::apply);
     }
     else if (stage instanceof Stage.FlatMapIterable) {
       Function<Object, Iterable<Object>> mapper = (Function) ((Stage.FlatMapIterable) stage).getMapper();
@@ -221,11 +276,13 @@ public class AkkaEngine implements ReactiveStreamsEngine {
     else if (stage instanceof Stage.Collect) {
       Collector collector = ((Stage.Collect) stage).getCollector();
       BiConsumer accumulator = collector.accumulator();
-      Object firstContainer = collector.supplier().get();
-      if (firstContainer == null) {
-        firstContainer = NULL;
-      }
-      Sink<Object, CompletionStage<Object>> sink = Sink.fold(firstContainer, (resultContainer, in) -> {
+      boolean identityFinish = collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH);
+      // The result container is created by the first element of each materialization, or on completion if there are no
+      // elements, rather than when the sink is built, so that the sink can be materialized more than once.
+      Sink<Object, CompletionStage<Object>> sink = Sink.fold(UNSET, (resultContainer, in) -> {
+        if (resultContainer == UNSET) {
+          resultContainer = newContainer(collector);
+        }
         if (resultContainer == NULL) {
           accumulator.accept(null, in);
         }
@@ -234,19 +291,15 @@ public class AkkaEngine implements ReactiveStreamsEngine {
         }
         return resultContainer;
       });
-      if (collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH) && firstContainer != NULL) {
-        return sink;
-      }
-      else {
-        return sink.mapMaterializedValue(result -> result.thenApply(r -> {
-          if (r == NULL) {
-            return collector.finisher().apply(null);
-          }
-          else {
-            return collector.finisher().apply(r);
-          }
-        }));
-      }
+      return sink.mapMaterializedValue(result -> result.thenApply(r -> {
+        if (r == UNSET) {
+          r = newContainer(collector);
+        }
+        if (r == NULL) {
+          r = null;
+        }
+        return identityFinish ? r : collector.finisher().apply(r);
+      }));
     }
     else if (stage instanceof Stage.SubscriberStage) {
       return Flow.create()
@@ -264,6 +317,11 @@ public class AkkaEngine implements ReactiveStreamsEngine {
     }
   }
 
+  private static Object newContainer(Collector collector) {
+    Object container = collector.supplier().get();
+    return container == null ? NULL : container;
+  }
+
   private Source toSource(Stage stage) {
     if (stage instanceof Stage.Of) {
       Iterable elements = ((Stage.Of) stage).getElements();
@@ -283,9 +341,7 @@ public class AkkaEngine implements ReactiveStreamsEngine {
       return Source.fromPublisher(((Stage.PublisherStage) stage).getRsPublisher());
     }
     else if (stage instanceof Stage.Concat) {
-      Graph first = ((Stage.Concat) stage).getFirst();
-      Graph second = ((Stage.Concat) stage).getSecond();
-      return buildSource(first).concat(buildSource(second));
+      return buildConcat((Stage.Concat) stage);
     }
     else if (stage instanceof Stage.Failed) {
       return Source.failed(((Stage.Failed) stage).getError());
@@ -298,6 +354,17 @@ public class AkkaEngine implements ReactiveStreamsEngine {
     }
   }
 
+  /**
+   * Build a concat.
+   * <p>
+   * Rather than using Akka's concat for each pair of graphs, the graphs are emitted by a single source and flattened
+   * with flatMapConcat, so each graph is only built when the previous one completes.
+   */
+  private Source buildConcat(Stage.Concat concat) {
+    return Source.fromGraph(new ConcatInputs(concat, graph -> materialize(buildSource(graph).to(Sink.cancelled()))))
+        .flatMapConcat(this::buildSource);
+  }
+
   private <T> T materialize(RunnableGraph<T> graph) {
     return graph.addAttributes(akkaEngineAttributes).run(materializer);
   }
@@ -324,4 +391,9 @@ public class AkkaEngine implements ReactiveStreamsEngine {
    * Place holder for null.
    */
   private static final Object NULL = new Object();
+
+  /**
+   * Place holder for a result container that hasn't been created yet.
+   */
+  private static final Object UNSET = new Object();
 }
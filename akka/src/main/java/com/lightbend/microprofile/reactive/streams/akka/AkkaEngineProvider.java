@@ -14,10 +14,12 @@ package com.lightbend.microprofile.reactive.streams.akka;
 import akka.actor.ActorSystem;
 import akka.actor.BootstrapSetup;
 import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
 import akka.stream.Materializer;
 import com.google.common.base.FinalizablePhantomReference;
 import com.google.common.base.FinalizableReferenceQueue;
 import com.google.common.collect.Sets;
+import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import org.eclipse.microprofile.reactive.streams.SubscriberWithResult;
 import org.eclipse.microprofile.reactive.streams.spi.Graph;
@@ -45,6 +47,21 @@ import java.util.concurrent.ForkJoinPool;
  */
 public class AkkaEngineProvider implements ReactiveStreamsEngine {
 
+  /**
+   * The path of the engine configuration in the config.
+   * <p>
+   * The config is loaded from the classpath in the usual way, so it can be set in an {@code application.conf} resource,
+   * or by system properties. See the {@code reference.conf} of this module for the settings that it contains. The
+   * engine's actor system doesn't use the root {@code akka} config, rather, it's configured by the {@code akka} section
+   * of the engine configuration.
+   */
+  public static final String CONFIG_PATH = "reactive-streams-engine";
+
+  /**
+   * The id of the dedicated dispatcher that streams run on, if it's enabled.
+   */
+  static final String DISPATCHER_ID = CONFIG_PATH + ".dispatcher";
+
   private static final FinalizableReferenceQueue frq = new FinalizableReferenceQueue();
   private static final Set<Reference<?>> references = Sets.newConcurrentHashSet();
 
@@ -56,19 +73,42 @@ public class AkkaEngineProvider implements ReactiveStreamsEngine {
   private static final Object mutex = new Object();
 
   private static AkkaEngine createEngine() {
+    ClassLoader classLoader = AkkaEngine.class.getClassLoader();
+    return createEngine(ConfigFactory.load(classLoader).getConfig(CONFIG_PATH));
+  }
+
+  /**
+   * Create an engine from the given engine configuration, that is, the {@value #CONFIG_PATH} section of the config.
+   */
+  static AkkaEngine createEngine(Config config) {
+    boolean dedicatedDispatcher = config.getBoolean("dedicated-dispatcher");
+    // Only use the engine's own akka config, to ensure any other actor systems using the root config don't conflict.
+    Config systemConfig = config.getConfig("akka").atKey("akka");
+    if (dedicatedDispatcher) {
+      systemConfig = systemConfig.withFallback(config.getConfig("dispatcher").atPath(DISPATCHER_ID));
+    }
     ActorSystem system = ActorSystem.create("reactive-streams-engine",
         BootstrapSetup.create()
             // Use JDK common thread pool rather than instantiate our own.
             .withDefaultExecutionContext(FutureConverters.fromExecutorService(ForkJoinPool.commonPool()))
             // Be explicit about the classloader.
             .withClassloader(AkkaEngine.class.getClassLoader())
-            // Use empty config to ensure any other actor systems using the root config don't conflict.
-            // todo maybe we want to be able to configure it?
-            .withConfig(ConfigFactory.empty())
+            .withConfig(systemConfig)
     );
-    Materializer materializer = ActorMaterializer.create(system);
 
-    AkkaEngine engine = new AkkaEngine(materializer);
+    Config materializerConfig = config.getConfig("materializer");
+    ActorMaterializerSettings settings = ActorMaterializerSettings.create(system)
+        .withInputBuffer(materializerConfig.getInt("initial-input-buffer-size"),
+            materializerConfig.getInt("max-input-buffer-size"))
+        .withOutputBurstLimit(materializerConfig.getInt("output-burst-limit"))
+        .withSyncProcessingLimit(materializerConfig.getInt("sync-processing-limit"));
+    if (dedicatedDispatcher) {
+      settings = settings.withDispatcher(DISPATCHER_ID);
+    }
+    Materializer materializer = ActorMaterializer.create(settings, system);
+
+    AkkaEngine engine = new AkkaEngine(materializer, config.getInt("completion-stage-parallelism"),
+        config.getInt("blueprint-cache-size"));
     references.add(new AkkaEngineFinalizablePhantomReference(engine, system));
     return engine;
   }
@@ -0,0 +1,175 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.akka;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of the Akka blueprints built for runs of stages, evicting the least recently used blueprint when
+ * full.
+ * <p>
+ * Only the flows and sinks built from stages that are defined by functions, such as map, filter and collect stages, are
+ * cached. Stages are keyed by their type and the identity of their functions, so the stages of two graphs built from
+ * the same builder, or from builders built up using the same functions, share a blueprint, even though the graphs and
+ * their stages are distinct objects.
+ * <p>
+ * Stages that are specific to a single build, that is, of, failed and concat stages, and publisher, processor and
+ * subscriber stages, are never cached, since a graph containing them will rarely be built again, and caching them
+ * would hold on to their elements, publishers and subscribers until they were evicted. Instead, the engine caches the
+ * stages that follow a source separately from the source itself. The functions of cached stages are held on to until
+ * they are evicted.
+ */
+class BlueprintCache {
+
+  /**
+   * The kind of blueprint that stages were built as, since the same stages may be built as more than one kind.
+   */
+  enum Kind {
+    FLOW, SINK
+  }
+
+  private final Map<Key, Object> blueprints;
+
+  BlueprintCache(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Blueprint cache size must be at least one");
+    }
+    this.blueprints = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the blueprint of the given kind for the given stages, building and caching it if it isn't cached.
+   * <p>
+   * If the stages can't be cached, the blueprint is just built. The blueprint is built outside of the lock on the
+   * cache, so concurrently building the same stages may build them more than once, in which case the last one built is
+   * kept.
+   */
+  <B> B get(Kind kind, List<Stage> stages, Function<List<Stage>, B> builder) {
+    Key key = Key.of(kind, stages);
+    if (key == null) {
+      return builder.apply(stages);
+    }
+    Object blueprint;
+    synchronized (blueprints) {
+      blueprint = blueprints.get(key);
+    }
+    if (blueprint == null) {
+      blueprint = builder.apply(stages);
+      synchronized (blueprints) {
+        blueprints.put(key, blueprint);
+      }
+    }
+    return (B) blueprint;
+  }
+
+  /**
+   * The number of blueprints in the cache.
+   */
+  int size() {
+    synchronized (blueprints) {
+      return blueprints.size();
+    }
+  }
+
+  /**
+   * The key for a run of stages, made up of the kind of blueprint, and the type and functions of each stage, which
+   * are compared by identity.
+   */
+  private static final class Key {
+    private final Object[] parts;
+    private final int hashCode;
+
+    private Key(Object[] parts) {
+      this.parts = parts;
+      int hashCode = 1;
+      for (Object part : parts) {
+        hashCode = 31 * hashCode + System.identityHashCode(part);
+      }
+      this.hashCode = hashCode;
+    }
+
+    /**
+     * Create the key for the given stages.
+     *
+     * @return The key, or null if the stages can't be cached.
+     */
+    static Key of(Kind kind, List<Stage> stages) {
+      Object[] parts = new Object[1 + stages.size() * 3];
+      parts[0] = kind;
+      int i = 1;
+      for (Stage stage : stages) {
+        parts[i++] = stage.getClass();
+        if (stage instanceof Stage.Map) {
+          parts[i++] = ((Stage.Map) stage).getMapper();
+        } else if (stage instanceof Stage.Filter) {
+          parts[i++] = ((Stage.Filter) stage).getPredicate();
+        } else if (stage instanceof Stage.TakeWhile) {
+          parts[i++] = ((Stage.TakeWhile) stage).getPredicate();
+          parts[i++] = ((Stage.TakeWhile) stage).isInclusive();
+        } else if (stage instanceof Stage.FlatMap) {
+          parts[i++] = ((Stage.FlatMap) stage).getMapper();
+        } else if (stage instanceof Stage.FlatMapCompletionStage) {
+          parts[i++] = ((Stage.FlatMapCompletionStage) stage).getMapper();
+        } else if (stage instanceof Stage.FlatMapIterable) {
+          parts[i++] = ((Stage.FlatMapIterable) stage).getMapper();
+        } else if (stage instanceof Stage.Collect) {
+          parts[i++] = ((Stage.Collect) stage).getCollector();
+        } else if (stage != Stage.FindFirst.INSTANCE && stage != Stage.Cancel.INSTANCE) {
+          // Stages specific to a single build, and stages we don't know the functions of
+          return null;
+        }
+      }
+      return new Key(i == parts.length ? parts : Arrays.copyOf(parts, i));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) obj;
+      if (hashCode != that.hashCode || parts.length != that.parts.length) {
+        return false;
+      }
+      for (int i = 0; i < parts.length; i++) {
+        if (parts[i] != that.parts[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public String toString() {
+      return "Key" + Arrays.toString(parts);
+    }
+  }
+}
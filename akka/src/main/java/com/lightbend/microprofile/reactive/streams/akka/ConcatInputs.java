@@ -0,0 +1,96 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.akka;
+
+import akka.stream.*;
+import akka.stream.stage.*;
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Source of the inputs of a concat.
+ * <p>
+ * Emits the graphs to concatenate one at a time, as they are pulled, so that when flattened, each graph is only built
+ * when the previous one completes. Inputs that are themselves concats are unnested as they are reached, so a chain of
+ * concats is run by a single source, rather than a source for each pair of graphs.
+ * <p>
+ * If cancelled before all the graphs have been emitted, which happens when the concat is cancelled or one of its
+ * inputs fails, the graphs that haven't been emitted are passed to the canceller, since the publishers in them may hold
+ * resources that are only released on cancellation.
+ */
+class ConcatInputs extends GraphStage<SourceShape<Graph>> {
+  private final Outlet<Graph> out = Outlet.create("ConcatInputs.out");
+
+  private final SourceShape<Graph> shape = SourceShape.of(out);
+
+  private final Stage.Concat concat;
+  private final Consumer<Graph> canceller;
+
+  ConcatInputs(Stage.Concat concat, Consumer<Graph> canceller) {
+    this.concat = concat;
+    this.canceller = canceller;
+  }
+
+  @Override
+  public SourceShape<Graph> shape() {
+    return shape;
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    return new GraphStageLogic(shape()) {
+      private final Deque<Graph> pending = new ArrayDeque<>();
+
+      {
+        pushInputs(concat);
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() throws Exception {
+            push(out, nextInput());
+            if (pending.isEmpty()) {
+              complete(out);
+            }
+          }
+
+          @Override
+          public void onDownstreamFinish() throws Exception {
+            while (!pending.isEmpty()) {
+              canceller.accept(nextInput());
+            }
+            super.onDownstreamFinish();
+          }
+        });
+      }
+
+      private void pushInputs(Stage.Concat concat) {
+        pending.push(concat.getSecond());
+        pending.push(concat.getFirst());
+      }
+
+      private Graph nextInput() {
+        Graph graph = pending.pop();
+        Collection<Stage> stages = graph.getStages();
+        while (stages.size() == 1 && stages.iterator().next() instanceof Stage.Concat) {
+          pushInputs((Stage.Concat) stages.iterator().next());
+          graph = pending.pop();
+          stages = graph.getStages();
+        }
+        return graph;
+      }
+    };
+  }
+}
@@ -0,0 +1,92 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.akka;
+
+import akka.stream.*;
+import akka.stream.stage.*;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A filter or take while stage, whose predicate is supplied afresh each time the stage is materialized.
+ * <p>
+ * Akka's own filter and take while stages take a predicate, which would be shared by every materialization of a
+ * blueprint they're part of, whereas the predicates of filter and take while stages may be stateful, so must not be
+ * shared.
+ */
+class SuppliedPredicateStage<T> extends GraphStage<FlowShape<T, T>> {
+  private final Inlet<T> in = Inlet.create("SuppliedPredicateStage.in");
+  private final Outlet<T> out = Outlet.create("SuppliedPredicateStage.out");
+
+  private final FlowShape<T, T> shape = FlowShape.of(in, out);
+
+  private final Supplier<Predicate<T>> predicateSupplier;
+  private final boolean takeWhile;
+  private final boolean inclusive;
+
+  private SuppliedPredicateStage(Supplier<Predicate<T>> predicateSupplier, boolean takeWhile, boolean inclusive) {
+    this.predicateSupplier = predicateSupplier;
+    this.takeWhile = takeWhile;
+    this.inclusive = inclusive;
+  }
+
+  /**
+   * A stage that drops the elements that don't match the predicate.
+   */
+  static <T> SuppliedPredicateStage<T> filter(Supplier<Predicate<T>> predicateSupplier) {
+    return new SuppliedPredicateStage<>(predicateSupplier, false, false);
+  }
+
+  /**
+   * A stage that completes when an element doesn't match the predicate, emitting that element first if inclusive.
+   */
+  static <T> SuppliedPredicateStage<T> takeWhile(Supplier<Predicate<T>> predicateSupplier, boolean inclusive) {
+    return new SuppliedPredicateStage<>(predicateSupplier, true, inclusive);
+  }
+
+  @Override
+  public FlowShape<T, T> shape() {
+    return shape;
+  }
+
+  @Override
+  public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+    Predicate<T> predicate = predicateSupplier.get();
+    return new GraphStageLogic(shape()) {
+      {
+        setHandler(in, new AbstractInHandler() {
+          @Override
+          public void onPush() throws Exception {
+            T element = grab(in);
+            if (predicate.test(element)) {
+              push(out, element);
+            } else if (!takeWhile) {
+              pull(in);
+            } else {
+              if (inclusive) {
+                push(out, element);
+              }
+              completeStage();
+            }
+          }
+        });
+        setHandler(out, new AbstractOutHandler() {
+          @Override
+          public void onPull() throws Exception {
+            pull(in);
+          }
+        });
+      }
+    };
+  }
+}
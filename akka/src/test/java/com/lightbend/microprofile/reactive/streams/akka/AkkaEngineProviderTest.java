@@ -17,6 +17,8 @@ import akka.stream.ActorMaterializer;
 import akka.stream.javadsl.AsPublisher;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import org.eclipse.microprofile.reactive.streams.ReactiveStreams;
 import org.testng.annotations.Test;
 import org.reactivestreams.Publisher;
@@ -29,6 +31,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class AkkaEngineProviderTest {
 
@@ -97,4 +100,23 @@ public class AkkaEngineProviderTest {
     FutureConverters.toJava(system.whenTerminated()).toCompletableFuture().get(10, TimeUnit.SECONDS);
   }
 
+  @Test
+  public void engineIsConfiguredFromTheEngineConfig() throws Exception {
+    Config config = ConfigFactory.parseString(
+        "materializer.max-input-buffer-size = 32\n" +
+            "dedicated-dispatcher = on\n" +
+            "dispatcher.fork-join-executor.parallelism-max = 2"
+    ).withFallback(ConfigFactory.defaultReference().getConfig(AkkaEngineProvider.CONFIG_PATH));
+    AkkaEngine engine = AkkaEngineProvider.createEngine(config);
+    ActorMaterializer materializer = (ActorMaterializer) engine.materializer;
+    try {
+      assertEquals(materializer.settings().maxInputBufferSize(), 32);
+      assertEquals(materializer.settings().dispatcher(), AkkaEngineProvider.DISPATCHER_ID);
+      String threadName = ReactiveStreams.of(1).map(i -> Thread.currentThread().getName()).findFirst().run(engine)
+          .toCompletableFuture().get(1, TimeUnit.SECONDS).get();
+      assertTrue(threadName.contains(AkkaEngineProvider.DISPATCHER_ID), threadName);
+    } finally {
+      materializer.system().terminate();
+    }
+  }
 }
@@ -0,0 +1,167 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.akka;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import scala.compat.java8.FutureConverters;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class BlueprintCacheTest {
+
+  private ActorSystem system;
+  private ActorMaterializer materializer;
+
+  @BeforeClass
+  public void createMaterializer() {
+    system = ActorSystem.create();
+    materializer = ActorMaterializer.create(system);
+  }
+
+  @AfterClass
+  public void shutdownMaterializer() throws Exception {
+    if (system != null) {
+      system.terminate();
+      FutureConverters.toJava(system.whenTerminated()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void stagesWithTheSameFunctionsAreBuiltOnce() {
+    BlueprintCache cache = new BlueprintCache(10);
+    Function<Integer, Integer> mapper = i -> i + 1;
+    CountingBuilder builder = new CountingBuilder();
+    Object first = cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Map(mapper)), builder);
+    Object second = cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Map(mapper)), builder);
+    assertSame(second, first);
+    assertEquals(builder.builds.get(), 1);
+    assertEquals(cache.size(), 1);
+  }
+
+  @Test
+  public void stagesWithDifferentFunctionsOrKindsAreBuiltSeparately() {
+    BlueprintCache cache = new BlueprintCache(10);
+    Function<Integer, Integer> mapper = i -> i + 1;
+    CountingBuilder builder = new CountingBuilder();
+    cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Map(mapper)), builder);
+    cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Map(i -> i)), builder);
+    cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Map(mapper), Stage.Cancel.INSTANCE), builder);
+    cache.get(BlueprintCache.Kind.SINK, Arrays.asList(new Stage.Map(mapper), Stage.Cancel.INSTANCE), builder);
+    assertEquals(builder.builds.get(), 4);
+    assertEquals(cache.size(), 4);
+  }
+
+  @Test
+  public void leastRecentlyUsedBlueprintsAreEvicted() {
+    BlueprintCache cache = new BlueprintCache(2);
+    List<Stage> a = Arrays.asList(new Stage.Map(i -> i));
+    List<Stage> b = Arrays.asList(new Stage.Map(i -> i));
+    List<Stage> c = Arrays.asList(new Stage.Map(i -> i));
+    CountingBuilder builder = new CountingBuilder();
+    cache.get(BlueprintCache.Kind.FLOW, a, builder);
+    cache.get(BlueprintCache.Kind.FLOW, b, builder);
+    cache.get(BlueprintCache.Kind.FLOW, a, builder);
+    cache.get(BlueprintCache.Kind.FLOW, c, builder);
+    assertEquals(builder.builds.get(), 3);
+    assertEquals(cache.size(), 2);
+
+    cache.get(BlueprintCache.Kind.FLOW, a, builder);
+    assertEquals(builder.builds.get(), 3);
+    cache.get(BlueprintCache.Kind.FLOW, b, builder);
+    assertEquals(builder.builds.get(), 4);
+  }
+
+  @Test
+  public void stagesSpecificToABuildAreNotCached() {
+    BlueprintCache cache = new BlueprintCache(10);
+    Function<Integer, Integer> mapper = i -> i + 1;
+    CountingBuilder builder = new CountingBuilder();
+    List<Integer> elements = Arrays.asList(1, 2, 3);
+    cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Of(elements), new Stage.Map(mapper)), builder);
+    cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Of(elements), new Stage.Map(mapper)), builder);
+    cache.get(BlueprintCache.Kind.FLOW, Arrays.asList(new Stage.Failed(new RuntimeException())), builder);
+    assertEquals(builder.builds.get(), 3);
+    assertEquals(cache.size(), 0);
+  }
+
+  @Test
+  public void elementsOfBuiltGraphsAreNotRetained() throws Exception {
+    AkkaEngine engine = new AkkaEngine(materializer, 1, 10);
+    Function<Integer, Integer> mapper = i -> i + 1;
+    WeakReference<List<Integer>> elements = runOf(engine, mapper);
+    for (int i = 0; i < 10 && elements.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(elements.get());
+  }
+
+  @Test
+  public void suppliedPredicatesOfCachedGraphsAreCreatedForEachMaterialization() throws Exception {
+    AkkaEngine engine = new AkkaEngine(materializer, 1, 10);
+    Supplier<Predicate<?>> distinct = () -> {
+      Set<Object> seen = new HashSet<>();
+      return (Predicate<Object>) seen::add;
+    };
+    Graph graph = graph(new Stage.Of(Arrays.asList(1, 1, 2)), new Stage.Filter(distinct),
+        new Stage.Collect(Collectors.toList()));
+    assertEquals(engine.buildCompletion(graph).toCompletableFuture().get(10, TimeUnit.SECONDS), Arrays.asList(1, 2));
+    assertEquals(engine.buildCompletion(graph).toCompletableFuture().get(10, TimeUnit.SECONDS), Arrays.asList(1, 2));
+  }
+
+  /**
+   * Runs a graph of a new list of elements, returning a weak reference to the list. The reference to the list will be
+   * cleared once it's collected, unless the list has been retained.
+   */
+  private static WeakReference<List<Integer>> runOf(AkkaEngine engine, Function<Integer, Integer> mapper)
+      throws Exception {
+    List<Integer> elements = new ArrayList<>(Arrays.asList(1, 2, 3));
+    Graph graph = graph(new Stage.Of(elements), new Stage.Map(mapper), new Stage.Collect(Collectors.toList()));
+    assertEquals(engine.buildCompletion(graph).toCompletableFuture().get(10, TimeUnit.SECONDS), Arrays.asList(2, 3, 4));
+    return new WeakReference<>(elements);
+  }
+
+  private static Graph graph(Stage... stages) {
+    return new Graph(Arrays.asList(stages));
+  }
+
+  private static class CountingBuilder implements Function<List<Stage>, Object> {
+    private final AtomicInteger builds = new AtomicInteger();
+
+    @Override
+    public Object apply(List<Stage> stages) {
+      builds.incrementAndGet();
+      return new Object();
+    }
+  }
+}
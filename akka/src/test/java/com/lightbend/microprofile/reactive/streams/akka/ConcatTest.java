@@ -0,0 +1,88 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.akka;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import scala.compat.java8.FutureConverters;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+public class ConcatTest {
+
+  private ActorSystem system;
+  private AkkaEngine engine;
+
+  @BeforeClass
+  public void createEngine() {
+    system = ActorSystem.create();
+    engine = new AkkaEngine(ActorMaterializer.create(system));
+  }
+
+  @AfterClass
+  public void shutdownEngine() throws Exception {
+    if (system != null) {
+      system.terminate();
+      FutureConverters.toJava(system.whenTerminated()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void unbuiltInputsAreCancelledWhenTheConcatIsCancelled() throws Exception {
+    NeverCompletes first = new NeverCompletes();
+    NeverCompletes second = new NeverCompletes();
+    Graph graph = graph(new Stage.Concat(graph(new Stage.Of(Arrays.asList(1, 2))),
+        graph(new Stage.Concat(graph(new Stage.PublisherStage(first)), graph(new Stage.PublisherStage(second))))),
+        Stage.FindFirst.INSTANCE);
+    assertEquals(engine.buildCompletion(graph).toCompletableFuture().get(10, TimeUnit.SECONDS), Optional.of(1));
+    first.cancelled.get(10, TimeUnit.SECONDS);
+    second.cancelled.get(10, TimeUnit.SECONDS);
+  }
+
+  private static Graph graph(Stage... stages) {
+    return new Graph(Arrays.asList(stages));
+  }
+
+  /**
+   * A publisher that never emits anything, and records when it's cancelled.
+   */
+  private static class NeverCompletes implements Publisher<Object> {
+    private final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+
+    @Override
+    public void subscribe(Subscriber<? super Object> subscriber) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+          cancelled.complete(null);
+        }
+      });
+    }
+  }
+}
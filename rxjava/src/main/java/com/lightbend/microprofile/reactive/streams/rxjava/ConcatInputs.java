@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.rxjava;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * The inputs of a concat, for a single subscription to it.
+ * <p>
+ * Each input is only built when the concat asks for it, that is, once the previous input has completed. When the concat
+ * terminates or is cancelled, any inputs that haven't been built yet are built and cancelled, since the publishers in
+ * them may hold resources that are only released on cancellation.
+ * <p>
+ * Inputs that are themselves concats are iterated through in place, so Flowable.concat sees a flat sequence of the
+ * inputs of a whole chain of concats.
+ */
+class ConcatInputs<T> implements Iterable<Publisher<T>>, Iterator<Publisher<T>> {
+  private final Deque<Graph> pending = new ArrayDeque<>();
+  private final Function<Graph, Publisher<T>> builder;
+
+  ConcatInputs(Stage.Concat concat, Function<Graph, Publisher<T>> builder) {
+    this.builder = builder;
+    pushInputs(concat);
+  }
+
+  @Override
+  public Iterator<Publisher<T>> iterator() {
+    return this;
+  }
+
+  @Override
+  public synchronized boolean hasNext() {
+    return !pending.isEmpty();
+  }
+
+  @Override
+  public synchronized Publisher<T> next() {
+    if (pending.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return builder.apply(nextGraph());
+  }
+
+  /**
+   * Cancel the inputs that haven't been built yet.
+   */
+  synchronized void cancelRemaining() {
+    while (!pending.isEmpty()) {
+      new CancelInjectingPublisher<>(builder.apply(nextGraph())).cancelIfNotSubscribed();
+    }
+  }
+
+  private void pushInputs(Stage.Concat concat) {
+    pending.push(concat.getSecond());
+    pending.push(concat.getFirst());
+  }
+
+  private Graph nextGraph() {
+    for (;;) {
+      Graph graph = pending.pop();
+      Collection<Stage> stages = graph.getStages();
+      if (stages.size() == 1 && stages.iterator().next() instanceof Stage.Concat) {
+        pushInputs((Stage.Concat) stages.iterator().next());
+      } else {
+        return graph;
+      }
+    }
+  }
+}
@@ -32,6 +32,25 @@ import java.util.stream.Collector;
 
 public class RxJavaEngine implements ReactiveStreamsEngine {
 
+  private final int completionStageParallelism;
+
+  public RxJavaEngine() {
+    this(1);
+  }
+
+  /**
+   * Create an engine.
+   *
+   * @param completionStageParallelism The maximum number of completion stages that a flat map completion stage may
+   *                                   have in flight at once. Results are still emitted in upstream order.
+   */
+  public RxJavaEngine(int completionStageParallelism) {
+    if (completionStageParallelism < 1) {
+      throw new IllegalArgumentException("Completion stage parallelism must be at least one");
+    }
+    this.completionStageParallelism = completionStageParallelism;
+  }
+
   @Override
   public <T> Publisher<T> buildPublisher(Graph graph) throws UnsupportedStageException {
     return this.buildFlowable(graph);
@@ -115,7 +134,12 @@ public class RxJavaEngine implements ReactiveStreamsEngine {
       return flowable.concatMap(e -> buildFlowable(mapper.apply(e)));
     } else if (stage instanceof Stage.FlatMapCompletionStage) {
       Function<Object, CompletionStage<Object>> mapper = (Function) ((Stage.FlatMapCompletionStage) stage).getMapper();
-      return flowable.concatMap(e -> SingleInterop.fromFuture(mapper.apply(e)).toFlowable(), 1);
+      if (completionStageParallelism > 1) {
+        return flowable.concatMapEager(e -> SingleInterop.fromFuture(mapper.apply(e)).toFlowable(),
+            completionStageParallelism, 1);
+      } else {
+        return flowable.concatMap(e -> SingleInterop.fromFuture(mapper.apply(e)).toFlowable(), 1);
+      }
     } else if (stage instanceof Stage.FlatMapIterable) {
       Function<Object, Iterable<Object>> mapper = (Function) ((Stage.FlatMapIterable) stage).getMapper();
       return flowable.concatMapIterable(mapper::apply);
@@ -167,12 +191,13 @@ public class RxJavaEngine implements ReactiveStreamsEngine {
     } else if (stage instanceof Stage.PublisherStage) {
       return Flowable.fromPublisher(((Stage.PublisherStage) stage).getRsPublisher());
     } else if (stage instanceof Stage.Concat) {
-      Graph first = ((Stage.Concat) stage).getFirst();
-      Graph second = ((Stage.Concat) stage).getSecond();
-      CancelInjectingPublisher secondPublisher = new CancelInjectingPublisher(buildFlowable(second));
-      return Flowable.concat(buildFlowable(first), secondPublisher)
-          .doOnTerminate(secondPublisher::cancelIfNotSubscribed)
-          .doOnCancel(secondPublisher::cancelIfNotSubscribed);
+      Stage.Concat concat = (Stage.Concat) stage;
+      return Flowable.defer(() -> {
+        ConcatInputs<Object> inputs = new ConcatInputs<>(concat, this::buildFlowable);
+        return Flowable.concat(inputs)
+            .doOnTerminate(inputs::cancelRemaining)
+            .doOnCancel(inputs::cancelRemaining);
+      });
     } else if (stage instanceof Stage.Failed) {
       return Flowable.error(((Stage.Failed) stage).getError());
     } else if (stage.hasOutlet() && !stage.hasInlet()) {
@@ -25,7 +25,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.stream.Collector;
 
 /**
  * A built graph.
@@ -38,7 +38,9 @@ import java.util.function.Predicate;
  * well as for publisher and subscriber stages, the ports are {@link SubscriberInlet} and {@link PublisherOutlet}.
  * <p>
  * So in general, a graph is a series of stages, each separated by {@link StageOutletInlet}, and started/ended by
- * {@link SubscriberInlet} and {@link PublisherOutlet} when the ends are open.
+ * {@link SubscriberInlet} and {@link PublisherOutlet} when the ends are open. Runs of consecutive map, filter and take
+ * while stages are the exception, these are fused into a single {@link FusedStage} with no ports between them, as are
+ * runs of zerodep specific primitive stages, which are collapsed into a single {@link PrimitiveStage}.
  * <p>
  * The graph itself is an executor. This executor guarantees that all operations submitted to it are run serially, on
  * a backed thread pool. All signals into the graph must be submitted to this executor. The executor also handles
@@ -46,63 +48,644 @@ import java.util.function.Predicate;
  */
 class BuiltGraph implements Executor {
 
-  private static final int DEFAULT_BUFFER_HIGH_WATERMARK = 8;
-  private static final int DEFAULT_BUFFER_LOW_WATERMARK = 4;
-
-  private final Executor mutex;
-  private final Deque<UnrolledSignal> unrolledSignals = new ArrayDeque<>();
-  private final Set<Port> ports = new LinkedHashSet<>();
-  private final Set<GraphStage> stages = new LinkedHashSet<>();
+  /**
+   * Submitted to the mutex to resume draining unrolled signals after the drain budget has been used up.
+   */
+  private static final Runnable RESUME_DRAINING = () -> {
+  };
 
-  private BuiltGraph(Executor threadPool) {
-    this.mutex = new MutexExecutor(threadPool);
+  private final MutexExecutor mutex;
+  private final EngineSettings settings;
+  private final int signalDrainBudget;
+  /**
+   * The unrolled signals queue. This is an array backed ring buffer, it grows to the maximum number of signals that are
+   * queued at once, and then is reused without further allocation. Commands unrolled by {@link #execute(Runnable)} are
+   * queued as is, and unrolled signals are runnable, so nothing is allocated to queue either.
+   */
+  private final Deque<Runnable> unrolledSignals;
+  private final Registry<Port> ports = new Registry<>();
+  private final Registry<GraphStage> stages = new Registry<>();
+
+  private BuiltGraph(Executor threadPool, EngineSettings settings) {
+    this.mutex = new MutexExecutor(threadPool, settings.getThroughput()) {
+      @Override
+      protected void runTask(Runnable task) {
+        runSignal(task);
+      }
+    };
+    this.settings = settings;
+    this.signalDrainBudget = settings.getSignalDrainBudget();
+    this.unrolledSignals = new ArrayDeque<>(signalDrainBudget);
   }
 
-  private static Builder newBuilder(Executor mutex) {
-    BuiltGraph logic = new BuiltGraph(mutex);
+  private static Builder newBuilder(Executor threadPool, EngineSettings settings) {
+    BuiltGraph logic = new BuiltGraph(threadPool, settings);
     return logic.new Builder();
   }
 
   /**
    * Build a pubisher graph.
    */
-  static <T> Publisher<T> buildPublisher(Executor mutex, Graph graph) {
-    return newBuilder(mutex).buildGraph(graph, Shape.PUBLISHER).publisher();
+  static <T> Publisher<T> buildPublisher(Executor threadPool, EngineSettings settings, Graph graph) {
+    return buildPublisher(threadPool, settings, compile(graph, false, settings));
+  }
+
+  /**
+   * Build a publisher graph from a plan.
+   * <p>
+   * The graph isn't actually built until it's subscribed to, so that it can be spliced into another graph if it's used
+   * as a stage of that graph first.
+   */
+  static <T> Publisher<T> buildPublisher(Executor threadPool, EngineSettings settings, Plan plan) {
+    plan.requireShape(Shape.PUBLISHER);
+    return new GraphPublisher<>(threadPool, settings, plan);
+  }
+
+  /**
+   * Build and start a publisher graph from a plan.
+   */
+  static <T> Publisher<T> startPublisher(Executor threadPool, EngineSettings settings, Plan plan) {
+    return newBuilder(threadPool, settings).buildGraph(plan, Shape.PUBLISHER).publisher();
   }
 
   /**
    * Build a subscriber graph.
    */
-  static <T, R> SubscriberWithResult<T, R> buildSubscriber(Executor mutex, Graph graph) {
-    return newBuilder(mutex).buildGraph(graph, Shape.SUBSCRIBER).subscriber();
+  static <T, R> SubscriberWithResult<T, R> buildSubscriber(Executor threadPool, EngineSettings settings, Graph graph) {
+    return buildSubscriber(threadPool, settings, compile(graph, false, settings));
+  }
+
+  /**
+   * Build a subscriber graph from a plan.
+   */
+  static <T, R> SubscriberWithResult<T, R> buildSubscriber(Executor threadPool, EngineSettings settings, Plan plan) {
+    return newBuilder(threadPool, settings).buildGraph(plan, Shape.SUBSCRIBER).subscriber();
   }
 
   /**
    * Build a processor graph.
    */
-  static <T, R> Processor<T, R> buildProcessor(Executor mutex, Graph graph) {
-    return newBuilder(mutex).buildGraph(graph, Shape.PROCESSOR).processor();
+  static <T, R> Processor<T, R> buildProcessor(Executor threadPool, EngineSettings settings, Graph graph) {
+    return buildProcessor(threadPool, settings, compile(graph, false, settings));
+  }
+
+  /**
+   * Build a processor graph from a plan.
+   * <p>
+   * The graph isn't actually built until it's first used, so that it can be spliced into another graph if it's used as
+   * a stage of that graph first.
+   */
+  static <T, R> Processor<T, R> buildProcessor(Executor threadPool, EngineSettings settings, Plan plan) {
+    plan.requireShape(Shape.PROCESSOR);
+    return new GraphProcessor<>(threadPool, settings, plan);
+  }
+
+  /**
+   * Build and start a processor graph from a plan.
+   */
+  static <T, R> Processor<T, R> startProcessor(Executor threadPool, EngineSettings settings, Plan plan) {
+    return newBuilder(threadPool, settings).buildGraph(plan, Shape.PROCESSOR).processor();
   }
 
   /**
    * Build a closed graph.
    */
-  static <T> CompletionStage<T> buildCompletion(Executor mutex, Graph graph) {
-    return newBuilder(mutex).buildGraph(graph, Shape.CLOSED).completion();
+  static <T> CompletionStage<T> buildCompletion(Executor threadPool, EngineSettings settings, Graph graph) {
+    return buildCompletion(threadPool, settings, compile(graph, false, settings));
+  }
+
+  /**
+   * Build a closed graph from a plan.
+   */
+  static <T> CompletionStage<T> buildCompletion(Executor threadPool, EngineSettings settings, Plan plan) {
+    if (plan.synchronousGraph != null) {
+      return plan.synchronousGraph.run(threadPool, settings);
+    }
+    return newBuilder(threadPool, settings).buildGraph(plan, Shape.CLOSED).completion();
+  }
+
+  private static Collection<Stage> splice(Collection<Stage> stages) {
+    List<Stage> spliced = null;
+    int i = 0;
+    for (Stage stage : stages) {
+      Stage splice = null;
+      if (stage instanceof Stage.PublisherStage && ((Stage.PublisherStage) stage).getRsPublisher()
+          instanceof GraphPublisher) {
+        splice = new SplicableGraph.Splice((GraphPublisher) ((Stage.PublisherStage) stage).getRsPublisher(), false);
+      } else if (stage instanceof Stage.ProcessorStage && ((Stage.ProcessorStage) stage).getRsProcessor()
+          instanceof GraphProcessor) {
+        splice = new SplicableGraph.Splice((GraphProcessor) ((Stage.ProcessorStage) stage).getRsProcessor(), true);
+      }
+      if (splice != null && spliced == null) {
+        spliced = new ArrayList<>(stages);
+      }
+      if (splice != null) {
+        spliced.set(i, splice);
+      }
+      i++;
+    }
+    return spliced == null ? stages : spliced;
+  }
+
+  /**
+   * Flatten the given concat, and any concats nested directly in its inputs, into a list of the graphs to concatenate.
+   */
+  private static List<Graph> flattenConcat(Stage.Concat concat) {
+    List<Graph> graphs = new ArrayList<>();
+    // Use a stack rather than recursion, so deeply nested concats can't overflow the call stack.
+    Deque<Graph> pending = new ArrayDeque<>();
+    pending.push(concat.getSecond());
+    pending.push(concat.getFirst());
+    while (!pending.isEmpty()) {
+      Graph graph = pending.pop();
+      Collection<Stage> stages = graph.getStages();
+      Stage first = stages.size() == 1 ? stages.iterator().next() : null;
+      if (first instanceof Stage.Concat) {
+        pending.push(((Stage.Concat) first).getSecond());
+        pending.push(((Stage.Concat) first).getFirst());
+      } else {
+        graphs.add(graph);
+      }
+    }
+    return graphs;
   }
 
   /**
    * Build a sub stage inlet.
    */
   <T> SubStageInlet<T> buildSubInlet(Graph graph) {
-    return new Builder().buildGraph(graph, Shape.INLET).inlet();
+    return buildSubInlet(compile(graph, true, settings));
+  }
+
+  /**
+   * Build a sub stage inlet from a plan compiled as an inlet graph.
+   */
+  <T> SubStageInlet<T> buildSubInlet(Plan plan) {
+    return new Builder().buildGraph(plan, Shape.INLET).inlet();
   }
 
   /**
    * Used to indicate the shape of the graph we're building.
    */
   private enum Shape {
-    PUBLISHER, SUBSCRIBER, PROCESSOR, CLOSED, INLET
+    PUBLISHER, SUBSCRIBER, PROCESSOR, CLOSED, INLET,
+    /**
+     * A publisher or processor graph that is being spliced into another graph, between an inlet, if it's a processor,
+     * and an outlet of that graph.
+     */
+    SPLICED
+  }
+
+  /**
+   * A compiled plan for building a graph.
+   * <p>
+   * Compiling a graph works out once which graph stage each stage should be instantiated as, and which port goes
+   * between each pair of stages, so that building a graph from the plan is just a matter of running through the plan,
+   * instantiating the ports and invoking the stage factories. Plans are immutable, and can be used to build any number
+   * of graphs.
+   */
+  static final class Plan {
+    /**
+     * If the first stage is a subscriber, then it's used directly as the first subscriber of the graph.
+     */
+    private final Subscriber firstSubscriber;
+    /**
+     * Whether the first stage has an inlet, in which case a subscriber inlet is the first subscriber of the graph.
+     */
+    private final boolean firstInlet;
+    private final PlannedStage[] stages;
+    /**
+     * If the graph is a closed graph with no asynchronous boundaries, then it's run synchronously instead of being built.
+     */
+    private final SynchronousGraph synchronousGraph;
+
+    private Plan(Subscriber firstSubscriber, boolean firstInlet, PlannedStage[] stages,
+        SynchronousGraph synchronousGraph) {
+      this.firstSubscriber = firstSubscriber;
+      this.firstInlet = firstInlet;
+      this.stages = stages;
+      this.synchronousGraph = synchronousGraph;
+    }
+
+    private Link lastLink() {
+      return stages[stages.length - 1].link;
+    }
+
+    private boolean hasLastPublisher() {
+      return lastLink() == Link.LAST_PUBLISHER || lastLink() == Link.LAST_PUBLISHER_OUTLET;
+    }
+
+    /**
+     * Check that the graph has the given shape, so that building a graph of the wrong shape fails straight away, even
+     * when building is deferred.
+     */
+    private void requireShape(Shape shape) {
+      boolean open = firstSubscriber != null || firstInlet;
+      if (shape == Shape.PUBLISHER && (open || !hasLastPublisher())) {
+        throw new NullPointerException("Not a publisher graph");
+      } else if (shape == Shape.PROCESSOR && (!open || !hasLastPublisher())) {
+        throw new NullPointerException("Not a processor graph");
+      }
+    }
+
+    /**
+     * Whether this plan can be spliced into another graph.
+     * <p>
+     * It can be, as long as it starts with either an inlet or a stage with no inlet, and ends with an outlet, rather
+     * than a publisher or subscriber.
+     */
+    boolean isSplicable() {
+      return firstSubscriber == null && lastLink() == Link.LAST_PUBLISHER_OUTLET;
+    }
+  }
+
+  /**
+   * A stage in a plan, along with the link to the stage that follows it.
+   */
+  private static final class PlannedStage {
+    private final StageFactory factory;
+    private final Link link;
+    /**
+     * The publisher of the stage, if the link is {@link Link#DIRECT} or {@link Link#LAST_PUBLISHER}.
+     */
+    private final Publisher publisher;
+
+    private PlannedStage(StageFactory factory, Link link, Publisher publisher) {
+      this.factory = factory;
+      this.link = link;
+      this.publisher = publisher;
+    }
+  }
+
+  /**
+   * How a stage is linked to the stage that follows it, or to the end of the graph if it's the last stage.
+   */
+  private enum Link {
+    /**
+     * The stage has no outlet or publisher.
+     */
+    NONE,
+    /**
+     * A publisher or processor stage feeding directly into a subscriber or processor stage.
+     */
+    DIRECT,
+    /**
+     * A publisher or processor stage feeding a SubscriberInlet.
+     */
+    SUBSCRIBER_INLET,
+    /**
+     * An outlet feeding a subscriber or processor stage through a PublisherOutlet.
+     */
+    PUBLISHER_OUTLET,
+    /**
+     * An outlet feeding an inlet through a StageOutletInlet.
+     */
+    OUTLET_INLET,
+    /**
+     * The last stage is a publisher or processor stage, and is used directly as the last publisher of the graph.
+     */
+    LAST_PUBLISHER,
+    /**
+     * The last stage is a publisher or processor stage, feeding a SubscriberInlet that is the last inlet of the graph.
+     */
+    LAST_SUBSCRIBER_INLET,
+    /**
+     * The last stage has an outlet, feeding a StageOutletInlet whose inlet is the last inlet of the graph.
+     */
+    LAST_OUTLET_INLET,
+    /**
+     * The last stage has an outlet, feeding a PublisherOutlet that is the last publisher of the graph.
+     */
+    LAST_PUBLISHER_OUTLET
+  }
+
+  /**
+   * Factory for the graph stages of a stage.
+   * <p>
+   * It is up to the caller to ensure that the right combination of inlet/publisher/outlet/subscriber are not null for
+   * the stage it's creating.
+   */
+  @FunctionalInterface
+  private interface StageFactory {
+    void addStage(Builder builder, StageInlet inlet, Publisher publisher, StageOutlet outlet, Subscriber subscriber);
+  }
+
+  /**
+   * Factory for stages that don't need to be added, because they're used directly as the last publisher.
+   */
+  private static final StageFactory NO_STAGE = (builder, inlet, publisher, outlet, subscriber) -> {
+  };
+
+  /**
+   * Compile a graph into a plan.
+   *
+   * @param graph The graph to compile.
+   * @param toInlet Whether the graph is being built as a sub stream inlet.
+   * @param settings The settings, for looking up the factories of custom stages.
+   */
+  static Plan compile(Graph graph, boolean toInlet, EngineSettings settings) {
+    Collection<Stage> graphStages = graph.getStages();
+    // Special case - an empty graph. This should result in an identity processor.
+    // To build this, we use a single map stage with the identity function.
+    if (graphStages.isEmpty()) {
+      graphStages = Collections.singleton(new Stage.Map(Function.identity()));
+    }
+
+    SynchronousGraph synchronousGraph = toInlet ? null : SynchronousGraph.compile(graphStages);
+
+    // Publisher and processor stages whose publisher or processor is a graph built by this engine are replaced with
+    // splices, so that if possible, those graphs are built as part of this graph when it's built.
+    graphStages = splice(graphStages);
+
+    // Collapse runs of consecutive map, filter and take while stages into fused stages, so that elements don't need
+    // to pass through a port between each of them.
+    graphStages = FusedStage.fuse(graphStages);
+    // Likewise, collapse runs of primitive stages, so that values can be passed between them as primitives.
+    graphStages = PrimitiveStage.collapse(graphStages);
+
+    // In the loop below, we need to compare each pair of consecutive stages, to work out what sort of inlet/outlet
+    // needs to be between them. Publisher, Subscriber and Processor stages get treated specially, since they need
+    // to feed in to/out of not an inlet, but a subscriber/publisher. So, we're looking for the following patterns:
+    // * A publisher or processor stage to a subscriber or processor stage - no inlet/outlet is needed, these can
+    //   feed directly to each other, and we connect them using a connector stage.
+    // * A publisher or processor stage to an inlet stage, these get connected using a SubscriberInlet
+    // * An outlet stage to a subscriber or processor stage, these get connected using a PublisherOutlet
+    // * An outlet stage to an inlet stage, these get connected using a StageOutletInlet
+    // Finally we need to consider the ends of the graph - if the first stage has no inlet, then no port is needed
+    // there. Otherwise, we need a SubscriberInlet. And if the last stage has no outlet, then no port is needed there,
+    // otherwise, we need a PublisherOutlet.
+    //
+    // As we iterate through the graph, we need to know what the previous stage is to be able to work out which link
+    // follows it.
+    List<PlannedStage> plannedStages = new ArrayList<>(graphStages.size());
+    Subscriber firstSubscriber = null;
+    boolean firstInlet = false;
+    Stage previousStage = null;
+
+    for (Stage stage : graphStages) {
+      // If this is the first stage in the graph
+      if (previousStage == null) {
+        if (isSubscriber(stage)) {
+          // It's a subscriber, we don't create an inlet, instead we use it directly as the first subscriber
+          // of this graph.
+          firstSubscriber = subscriberOf(stage);
+        } else if (stage.hasInlet()) {
+          // Otherwise if it has an inlet, we need to create a subscriber inlet as the first subscriber.
+          firstInlet = true;
+        }
+      } else {
+        Link link;
+        if (isPublisher(previousStage)) {
+          link = isSubscriber(stage) ? Link.DIRECT : Link.SUBSCRIBER_INLET;
+        } else {
+          link = isSubscriber(stage) ? Link.PUBLISHER_OUTLET : Link.OUTLET_INLET;
+        }
+        plannedStages.add(planStage(previousStage, link, settings));
+      }
+
+      previousStage = stage;
+    }
+
+    // Now we need to handle the last stage
+    if (previousStage != null) {
+      Link link;
+      if (isPublisher(previousStage)) {
+        link = toInlet ? Link.LAST_SUBSCRIBER_INLET : Link.LAST_PUBLISHER;
+      } else if (previousStage.hasOutlet()) {
+        link = toInlet ? Link.LAST_OUTLET_INLET : Link.LAST_PUBLISHER_OUTLET;
+      } else {
+        link = Link.NONE;
+      }
+      plannedStages.add(planStage(previousStage, link, settings));
+    }
+
+    return new Plan(firstSubscriber, firstInlet, plannedStages.toArray(new PlannedStage[plannedStages.size()]),
+        synchronousGraph);
+  }
+
+  private static PlannedStage planStage(Stage stage, Link link, EngineSettings settings) {
+    if (link == Link.LAST_PUBLISHER) {
+      // Last stage is a publisher, and we need a publisher, no need to add it, it just becomes the last publisher.
+      return new PlannedStage(NO_STAGE, link, publisherOf(stage));
+    } else if (link == Link.DIRECT) {
+      return new PlannedStage(compileStage(stage, settings), link, publisherOf(stage));
+    } else {
+      return new PlannedStage(compileStage(stage, settings), link, null);
+    }
+  }
+
+  /**
+   * Compiles a stage into a factory that adds it to a graph.
+   */
+  private interface StageCompiler<S extends Stage> {
+    StageFactory compile(S stage, EngineSettings settings);
+  }
+
+  /**
+   * The compilers for the stages that this engine supports itself, keyed by stage type.
+   */
+  private static final Map<Class<?>, StageCompiler<?>> BUILT_IN_STAGES = new HashMap<>();
+
+  private static <S extends Stage> void builtIn(Class<S> stageType, StageCompiler<S> compiler) {
+    BUILT_IN_STAGES.put(stageType, compiler);
+  }
+
+  static {
+    // Stages without an inlet
+    builtIn(Stage.Of.class, (stage, settings) -> {
+      Iterable elements = stage.getElements();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new OfStage(builder.graph(), outlet, elements));
+    });
+    builtIn(Stage.Concat.class, (stage, settings) -> {
+      // Nested concats are flattened into a single concat stage, which builds each of its inputs when it's needed.
+      List<Graph> graphs = flattenConcat(stage);
+      ConcatStage.Input[] inputs = new ConcatStage.Input[graphs.size()];
+      for (int i = 0; i < inputs.length; i++) {
+        inputs[i] = new ConcatStage.Input(graphs.get(i), compile(graphs.get(i), true, settings));
+      }
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new ConcatStage(builder.graph(), inputs, outlet));
+    });
+    builtIn(Stage.PublisherStage.class, (stage, settings) -> {
+      Publisher rsPublisher = stage.getRsPublisher();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new ConnectorStage<>(builder.graph(), rsPublisher, subscriber));
+    });
+    builtIn(Stage.Failed.class, (stage, settings) -> {
+      Throwable error = stage.getError();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new FailedStage(builder.graph(), outlet, error));
+    });
+
+    // Stages with an inlet and an outlet
+    builtIn(Stage.Map.class, (stage, settings) -> {
+      Function mapper = stage.getMapper();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new MapStage(builder.graph(), inlet, outlet, mapper));
+    });
+    // The predicate is supplied afresh for each graph that is built
+    builtIn(Stage.Filter.class, (stage, settings) -> (builder, inlet, publisher, outlet, subscriber) ->
+        builder.addStage(new FilterStage(builder.graph(), inlet, outlet, stage.getPredicate().get())));
+    builtIn(Stage.TakeWhile.class, (stage, settings) -> {
+      boolean inclusive = stage.isInclusive();
+      return (builder, inlet, publisher, outlet, subscriber) -> builder.addStage(new TakeWhileStage(builder.graph(),
+          inlet, outlet, stage.getPredicate().get(), inclusive));
+    });
+    builtIn(FusedStage.Fused.class, (stage, settings) -> {
+      List<Stage> fusedStages = stage.getStages();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new FusedStage(builder.graph(), inlet, outlet, fusedStages));
+    });
+    builtIn(Stage.FlatMap.class, (stage, settings) -> {
+      Function mapper = stage.getMapper();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new FlatMapStage(builder.graph(), inlet, outlet, mapper));
+    });
+    builtIn(ZeroDepStage.FlatMapMerge.class, (stage, settings) -> {
+      Function mapper = stage.getMapper();
+      int parallelism = stage.getParallelism();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new FlatMapMergeStage(builder.graph(), inlet, outlet, mapper, parallelism));
+    });
+    builtIn(Stage.FlatMapCompletionStage.class, (stage, settings) -> {
+      Function mapper = stage.getMapper();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new FlatMapCompletionStage(builder.graph(), inlet, outlet, mapper,
+              builder.graph().settings.getCompletionStageParallelism()));
+    });
+    builtIn(ZeroDepStage.UnorderedFlatMapCompletionStage.class, (stage, settings) -> {
+      Function mapper = stage.getMapper();
+      int parallelism = stage.getParallelism();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new UnorderedFlatMapCompletionStage(builder.graph(), inlet, outlet, mapper, parallelism));
+    });
+    builtIn(Stage.FlatMapIterable.class, (stage, settings) -> {
+      Function mapper = stage.getMapper();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new FlatMapIterableStage(builder.graph(), inlet, outlet, mapper));
+    });
+    builtIn(Stage.ProcessorStage.class, (stage, settings) -> {
+      Processor processor = stage.getRsProcessor();
+      return (builder, inlet, publisher, outlet, subscriber) -> {
+        // If the processor is the first stage of the graph, then it's the first subscriber of the graph, and there's
+        // no publisher to connect to it.
+        if (publisher != null) {
+          builder.addStage(new ConnectorStage(builder.graph(), publisher, processor));
+        }
+        builder.addStage(new ConnectorStage(builder.graph(), processor, subscriber));
+      };
+    });
+    // Splices of publishers have no inlet, so the inlet passed for them is null.
+    builtIn(SplicableGraph.Splice.class, (stage, settings) -> {
+      SplicableGraph<?> graph = stage.getGraph();
+      return (builder, inlet, publisher, outlet, subscriber) -> builder.splice(graph, inlet, outlet);
+    });
+    // Primitive runs either end in an outlet, or are the last stage of the graph and complete its result.
+    builtIn(PrimitiveStage.Run.class, (stage, settings) -> {
+      if (stage.hasOutlet()) {
+        return (builder, inlet, publisher, outlet, subscriber) ->
+            builder.addStage(PrimitiveStage.create(builder.graph(), inlet, outlet, null, stage));
+      } else {
+        return (builder, inlet, publisher, outlet, subscriber) ->
+            builder.addStage(PrimitiveStage.create(builder.graph(), inlet, null, builder.result, stage));
+      }
+    });
+
+    // Stages without an outlet
+    builtIn(Stage.Collect.class, (stage, settings) -> {
+      Collector collector = stage.getCollector();
+      return (builder, inlet, publisher, outlet, subscriber) ->
+          builder.addStage(new CollectStage(builder.graph(), inlet, builder.result, collector));
+    });
+    builtIn(Stage.FindFirst.class, (stage, settings) -> (builder, inlet, publisher, outlet, subscriber) ->
+        builder.addStage(new FindFirstStage(builder.graph(), inlet, builder.result)));
+    builtIn(Stage.Cancel.class, (stage, settings) -> (builder, inlet, publisher, outlet, subscriber) ->
+        builder.addStage(new CancelStage(builder.graph(), inlet, builder.result)));
+    builtIn(Stage.SubscriberStage.class, (stage, settings) -> {
+      Subscriber rsSubscriber = stage.getRsSubscriber();
+      return (builder, inlet, publisher, outlet, subscriber) -> {
+        // We need to capture termination, to do that we insert a CaptureTerminationStage between this and the
+        // previous stage.
+        if (inlet == null) {
+          SubscriberInlet subscriberInlet = builder.addPort(builder.createSubscriberInlet());
+          if (publisher != null) {
+            builder.addStage(new ConnectorStage(builder.graph(), publisher, subscriberInlet));
+          } else {
+            builder.firstSubscriber = subscriberInlet;
+          }
+          inlet = subscriberInlet;
+        }
+        PublisherOutlet publisherOutlet = builder.addPort(builder.createPublisherOutlet());
+        builder.addStage(new CaptureTerminationStage(builder.graph(), inlet, publisherOutlet, builder.result));
+        builder.addStage(new ConnectorStage(builder.graph(), publisherOutlet, rsSubscriber));
+      };
+    });
+  }
+
+  /**
+   * Whether the given type of stage is supported by this engine itself.
+   */
+  static boolean isBuiltInStage(Class<?> stageType) {
+    for (Class<?> type = stageType; type != null; type = type.getSuperclass()) {
+      if (BUILT_IN_STAGES.containsKey(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compile a stage.
+   * <p>
+   * The compiler for the stage is looked up by its type, first from the stages that this engine supports itself, and
+   * then from the custom stage factories registered in the settings, and it returns a factory that creates the stage
+   * using the passed in inlet, publisher, outlet or subscriber, according to what it needs.
+   */
+  private static StageFactory compileStage(Stage stage, EngineSettings settings) {
+    for (Class<?> type = stage.getClass(); type != null; type = type.getSuperclass()) {
+      StageCompiler compiler = BUILT_IN_STAGES.get(type);
+      if (compiler != null) {
+        return compiler.compile(stage, settings);
+      }
+    }
+
+    GraphStageFactory factory = settings.stageFactoryFor(stage.getClass());
+    if (factory == null) {
+      throw new UnsupportedStageException(stage);
+    }
+    boolean hasInlet = stage.hasInlet();
+    boolean hasOutlet = stage.hasOutlet();
+    return (builder, inlet, publisher, outlet, subscriber) -> {
+      StageContext context = new StageContext(builder.graph(), hasInlet ? inlet : null, hasOutlet ? outlet : null,
+          hasOutlet ? null : builder.result);
+      builder.addStage(Objects.requireNonNull(factory.createStage(stage, context),
+          "Stage factory must not return null"));
+    };
+  }
+
+  private static boolean isSubscriber(Stage stage) {
+    return stage instanceof Stage.SubscriberStage || stage instanceof Stage.ProcessorStage;
+  }
+
+  private static boolean isPublisher(Stage stage) {
+    return stage instanceof Stage.PublisherStage || stage instanceof Stage.ProcessorStage;
+  }
+
+  private static Subscriber subscriberOf(Stage stage) {
+    if (stage instanceof Stage.SubscriberStage) {
+      return ((Stage.SubscriberStage) stage).getRsSubscriber();
+    } else {
+      return ((Stage.ProcessorStage) stage).getRsProcessor();
+    }
+  }
+
+  private static Publisher publisherOf(Stage stage) {
+    if (stage instanceof Stage.PublisherStage) {
+      return ((Stage.PublisherStage) stage).getRsPublisher();
+    } else {
+      return ((Stage.ProcessorStage) stage).getRsProcessor();
+    }
   }
 
   /**
@@ -139,149 +722,151 @@ class BuiltGraph implements Executor {
      * The ports that have been added to the graph by this builder.
      */
     private List<Port> builderPorts = new ArrayList<>();
+    /**
+     * The groups that the stages and ports of this builder are registered with the graph under, once built.
+     */
+    private Registry.Group<GraphStage> stagesGroup;
+    private Registry.Group<Port> portsGroup;
+    /**
+     * When splicing a graph, the inlet and outlet of the enclosing graph that it's being spliced between.
+     */
+    private StageInlet splicedInlet;
+    private StageOutlet splicedOutlet;
 
     /**
-     * Build the graph.
+     * Build the graph from the given plan.
      */
-    private Builder buildGraph(Graph graph, Shape shape) {
+    private Builder buildGraph(Plan plan, Shape shape) {
 
       // If we're building a subscriber or closed graph, instantiate the result.
       if (shape == Shape.SUBSCRIBER || shape == Shape.CLOSED) {
         result = new CompletableFuture();
       }
 
-      Collection<Stage> graphStages = graph.getStages();
-      // Special case - an empty graph. This should result in an identity processor.
-      // To build this, we use a single map stage with the identity function.
-      if (graphStages.isEmpty()) {
-        graphStages = Collections.singleton(new Stage.Map(Function.identity()));
-      }
-
-      // In the loop below, we need to compare each pair of consecutive stages, to work out what sort of inlet/outlet
-      // needs to be between them. Publisher, Subscriber and Processor stages get treated specially, since they need
-      // to feed in to/out of not an inlet, but a subscriber/publisher. So, we're looking for the following patterns:
-      // * A publisher or processor stage to a subscriber or processor stage - no inlet/outlet is needed, these can
-      //   feed directly to each other, and we connect them using a connector stage.
-      // * A publisher or processor stage to an inlet stage, these get connected using a SubscriberInlet
-      // * An outlet stage to a subscriber or processor stage, these get connected using a PublisherOutlet
-      // * An outlet stage to an inlet stage, these get connected using a StageOutletInlet
-      // Finally we need to consider the ends of the graph - if the first stage has no inlet, then no port is needed
-      // there. Otherwise, we need a SubscriberInlet. And if the last stage has no outlet, then no port is needed there,
-      // otherwise, we need a PublisherOutlet.
-      //
-      // As we iterate through the graph, we need to know what the previous stage is to be able to work out which port
-      // to instantiate, and we need to keep a reference to either the previous inlet or publisher, so that we can
-      // pass it to the next stage that we construct.
-      Stage previousStage = null;
+      // As we iterate through the plan, we need to keep a reference to either the previous inlet or publisher, so
+      // that we can pass it to the next stage that we construct.
       StageInlet previousInlet = null;
       Publisher previousPublisher = null;
 
-      for (Stage stage : graphStages) {
+      if (plan.firstSubscriber != null) {
+        firstSubscriber = plan.firstSubscriber;
+      } else if (plan.firstInlet && shape == Shape.SPLICED) {
+        previousInlet = splicedInlet;
+      } else if (plan.firstInlet) {
+        SubscriberInlet inlet = addPort(createSubscriberInlet());
+        previousInlet = inlet;
+        firstSubscriber = inlet;
+      }
+
+      for (PlannedStage stage : plan.stages) {
 
         StageOutlet currentOutlet = null;
         StageInlet currentInlet = null;
         Publisher currentPublisher = null;
         Subscriber currentSubscriber = null;
 
-        // If this is the first stage in the graph
-        if (previousStage == null) {
-          if (isSubscriber(stage)) {
-            // It's a subscriber, we don't create an inlet, instead we use it directly as the first subscriber
-            // of this graph.
-            if (stage instanceof Stage.SubscriberStage) {
-              firstSubscriber = ((Stage.SubscriberStage) stage).getRsSubscriber();
-            } else if (stage instanceof Stage.ProcessorStage) {
-              firstSubscriber = ((Stage.ProcessorStage) stage).getRsProcessor();
-            }
-          } else if (stage.hasInlet()) {
-            // Otherwise if it has an inlet, we need to create a subscriber inlet as the first subscriber.
+        switch (stage.link) {
+          case DIRECT:
+            currentPublisher = stage.publisher;
+            break;
+          case SUBSCRIBER_INLET: {
             SubscriberInlet inlet = addPort(createSubscriberInlet());
             currentInlet = inlet;
-            firstSubscriber = inlet;
+            currentSubscriber = inlet;
+            break;
           }
-        } else {
-          if (isPublisher(previousStage)) {
-            if (isSubscriber(stage)) {
-              // We're connecting a publisher to a subscriber, don't create any port, just record what the current
-              // publisher is.
-              if (previousStage instanceof Stage.PublisherStage) {
-                currentPublisher = ((Stage.PublisherStage) previousStage).getRsPublisher();
-              } else {
-                currentPublisher = ((Stage.ProcessorStage) previousStage).getRsProcessor();
-              }
-            } else {
-              // We're connecting a publisher to an inlet, create a subscriber inlet for that.
-              SubscriberInlet inlet = addPort(createSubscriberInlet());
-              currentInlet = inlet;
-              currentSubscriber = inlet;
-            }
-          } else {
-            if (isSubscriber(stage)) {
-              // We're connecting an outlet to a subscriber, create a publisher outlet for that.
-              PublisherOutlet outlet = addPort(new PublisherOutlet(BuiltGraph.this));
-              currentOutlet = outlet;
-              currentPublisher = outlet;
-            } else {
-              // We're connecting an outlet to an inlet
-              StageOutletInlet outletInlet = addPort(new StageOutletInlet(BuiltGraph.this));
-              currentOutlet = outletInlet.new Outlet();
-              currentInlet = outletInlet.new Inlet();
-            }
+          case PUBLISHER_OUTLET: {
+            PublisherOutlet outlet = addPort(createPublisherOutlet());
+            currentOutlet = outlet;
+            currentPublisher = outlet;
+            break;
           }
-
-          // Now that we know the inlet/outlet/subscriber/publisher for the previous stage, we can instantiate it
-          addStage(previousStage, previousInlet, previousPublisher, currentOutlet, currentSubscriber);
-        }
-
-        previousStage = stage;
-        previousInlet = currentInlet;
-        previousPublisher = currentPublisher;
-      }
-
-      // Now we need to handle the last stage
-      if (previousStage != null) {
-        if (isPublisher(previousStage)) {
-          if (shape == Shape.INLET) {
-            // Last stage is a publisher, and we need to produce a sub stream inlet
+          case OUTLET_INLET: {
+            StageOutletInlet outletInlet = addPort(new StageOutletInlet(BuiltGraph.this));
+            currentOutlet = outletInlet.new Outlet();
+            currentInlet = outletInlet.new Inlet();
+            break;
+          }
+          case LAST_PUBLISHER:
+            lastPublisher = stage.publisher;
+            break;
+          case LAST_SUBSCRIBER_INLET: {
             SubscriberInlet subscriberInlet = addPort(createSubscriberInlet());
             lastInlet = subscriberInlet;
-            addStage(previousStage, null, null, null, subscriberInlet);
-          } else {
-            // Last stage is a publisher, and we need a publisher, no need to handle it, we just set it to be
-            // the last publisher.
-            if (previousStage instanceof Stage.PublisherStage) {
-              lastPublisher = ((Stage.PublisherStage) previousStage).getRsPublisher();
-            } else {
-              lastPublisher = ((Stage.ProcessorStage) previousStage).getRsProcessor();
-            }
+            currentSubscriber = subscriberInlet;
+            break;
           }
-        } else if (previousStage.hasOutlet()) {
-          StageOutlet outlet;
-          if (shape == Shape.INLET) {
-            // We need to produce an inlet, and the last stage has an outlet, so create an outlet inlet for that
+          case LAST_OUTLET_INLET: {
             StageOutletInlet outletInlet = addPort(new StageOutletInlet(BuiltGraph.this));
             lastInlet = outletInlet.new Inlet();
-            outlet = outletInlet.new Outlet();
-          } else {
-            // Otherwise we must be producing a publisher, to create a publisher outlet for that.
-            PublisherOutlet publisherOutlet = addPort(new PublisherOutlet(BuiltGraph.this));
-            outlet = publisherOutlet;
+            currentOutlet = outletInlet.new Outlet();
+            break;
+          }
+          case LAST_PUBLISHER_OUTLET: {
+            if (shape == Shape.SPLICED) {
+              currentOutlet = splicedOutlet;
+              break;
+            }
+            PublisherOutlet publisherOutlet = addPort(createPublisherOutlet());
+            currentOutlet = publisherOutlet;
             lastPublisher = publisherOutlet;
+            break;
           }
-          // And add the stage
-          addStage(previousStage, previousInlet, previousPublisher, outlet, null);
-        } else {
-          // There's no outlet or publisher, just wire it to the previous stage
-          addStage(previousStage, previousInlet, previousPublisher, null, null);
+          case NONE:
+            break;
         }
+
+        // Now that we know the inlet/outlet/subscriber/publisher for the stage, we can instantiate it
+        stage.factory.addStage(this, previousInlet, previousPublisher, currentOutlet, currentSubscriber);
+
+        previousInlet = currentInlet;
+        previousPublisher = currentPublisher;
       }
 
-      ports.addAll(builderPorts);
-      stages.addAll(builderStages);
+      // A builder may build more than one plan, such as when building concatenated graphs, but its stages and ports only
+      // need to be registered once, since the groups hold the lists that they get added to.
+      if (stagesGroup == null) {
+        stagesGroup = stages.register(builderStages);
+        portsGroup = ports.register(builderPorts);
+      }
 
       return this;
     }
 
+    /**
+     * Splice the given graph between the given inlet and outlet.
+     * <p>
+     * If the graph can't be spliced, because it has already been used, or its plan isn't splicable, then it's connected
+     * to the inlet and outlet through a publisher outlet and subscriber inlet instead, as it would be if it weren't a
+     * graph built by this engine.
+     *
+     * @param graph The graph to splice.
+     * @param inlet The inlet to feed the graph from, if it's a processor, otherwise null.
+     * @param outlet The outlet that the graph feeds.
+     */
+    private void splice(SplicableGraph<?> graph, StageInlet inlet, StageOutlet outlet) {
+      Plan plan = graph.splice();
+      if (plan != null) {
+        // Splices may be nested, so restore the enclosing splice's inlet and outlet when done
+        StageInlet enclosingInlet = splicedInlet;
+        StageOutlet enclosingOutlet = splicedOutlet;
+        splicedInlet = inlet;
+        splicedOutlet = outlet;
+        buildGraph(plan, Shape.SPLICED);
+        splicedInlet = enclosingInlet;
+        splicedOutlet = enclosingOutlet;
+      } else {
+        if (inlet != null) {
+          PublisherOutlet toGraph = addPort(createPublisherOutlet());
+          addStage(new MapStage(graph(), inlet, toGraph, Function.identity()));
+          addStage(new ConnectorStage(graph(), toGraph, (Subscriber) graph));
+        }
+        SubscriberInlet fromGraph = addPort(createSubscriberInlet());
+        addStage(new ConnectorStage(graph(), (Publisher) graph, fromGraph));
+        addStage(new MapStage(graph(), fromGraph, outlet, Function.identity()));
+      }
+    }
+
     /**
      * Verify that the ports in this builder are ready to start receiving signals - that is, that they all have their
      * listeners set.
@@ -299,7 +884,7 @@ class BuiltGraph implements Executor {
       assert firstSubscriber == null;
       assert lastPublisher == null;
 
-      return new SubStageInlet(lastInlet, builderStages, builderPorts);
+      return new SubStageInlet(lastInlet, builderStages, builderPorts, stagesGroup, portsGroup);
     }
 
     Publisher publisher() {
@@ -309,7 +894,7 @@ class BuiltGraph implements Executor {
       assert lastInlet == null;
 
       verifyReady();
-      startGraph();
+      startGraph(builderStages);
 
       return lastPublisher;
     }
@@ -321,7 +906,7 @@ class BuiltGraph implements Executor {
       assert lastInlet == null;
 
       verifyReady();
-      startGraph();
+      startGraph(builderStages);
 
       return new SubscriberWithResult(firstSubscriber, result);
     }
@@ -333,7 +918,7 @@ class BuiltGraph implements Executor {
       assert lastInlet == null;
 
       verifyReady();
-      startGraph();
+      startGraph(builderStages);
 
       return result;
     }
@@ -344,105 +929,17 @@ class BuiltGraph implements Executor {
       assert result == null;
 
       verifyReady();
-      startGraph();
+      startGraph(builderStages);
 
       return new WrappedProcessor(firstSubscriber, lastPublisher);
     }
 
-    /**
-     * Add a stage.
-     * <p>
-     * The stage will be inspected to see what type of stage it is, and it will be created using the passed in inlet,
-     * publisher, outlet or subscriber, according to what it needs.
-     * <p>
-     * It is up to the caller of this method to ensure that the right combination of inlet/publisher/outlet/subscriber
-     * are not null for the stage it's creating.
-     */
-    private void addStage(Stage stage, StageInlet inlet, Publisher publisher, StageOutlet outlet,
-        Subscriber subscriber) {
-
-      // Inlets
-      if (!stage.hasInlet()) {
-        if (stage instanceof Stage.Of) {
-          addStage(new OfStage(BuiltGraph.this, outlet,
-              ((Stage.Of) stage).getElements()));
-        } else if (stage instanceof Stage.Concat) {
-
-          // Use this builder to build each of the sub stages that are being concatenated as an inlet graph, and then
-          // capture the last inlet of each to pass to the concat stage.
-          buildGraph(((Stage.Concat) stage).getFirst(), Shape.INLET);
-          StageInlet firstInlet = lastInlet;
-          lastInlet = null;
-
-          buildGraph(((Stage.Concat) stage).getSecond(), Shape.INLET);
-          StageInlet secondInlet = lastInlet;
-          lastInlet = null;
-
-          addStage(new ConcatStage(BuiltGraph.this, firstInlet, secondInlet, outlet));
-        } else if (stage instanceof Stage.PublisherStage) {
-          addStage(new ConnectorStage<>(BuiltGraph.this, ((Stage.PublisherStage) stage).getRsPublisher(), subscriber));
-        } else if (stage instanceof Stage.Failed) {
-          addStage(new FailedStage(BuiltGraph.this, outlet, ((Stage.Failed) stage).getError()));
-        } else {
-          throw new UnsupportedStageException(stage);
-        }
-
-        // Inlet/Outlets
-      } else if (stage.hasOutlet()) {
-        if (stage instanceof Stage.Map) {
-          addStage(new MapStage(BuiltGraph.this, inlet, outlet,
-              ((Stage.Map) stage).getMapper()));
-        } else if (stage instanceof Stage.Filter) {
-          addStage(new FilterStage(BuiltGraph.this, inlet, outlet, ((Stage.Filter) stage).getPredicate().get()));
-        } else if (stage instanceof Stage.TakeWhile) {
-          Predicate predicate = ((Stage.TakeWhile) stage).getPredicate().get();
-          boolean inclusive = ((Stage.TakeWhile) stage).isInclusive();
-          addStage(new TakeWhileStage(BuiltGraph.this, inlet, outlet, predicate, inclusive));
-        } else if (stage instanceof Stage.FlatMap) {
-          addStage(new FlatMapStage(BuiltGraph.this, inlet, outlet, ((Stage.FlatMap) stage).getMapper()));
-        } else if (stage instanceof Stage.FlatMapCompletionStage) {
-          addStage(new FlatMapCompletionStage(BuiltGraph.this, inlet, outlet, ((Stage.FlatMapCompletionStage) stage).getMapper()));
-        } else if (stage instanceof Stage.FlatMapIterable) {
-          addStage(new FlatMapIterableStage(BuiltGraph.this, inlet, outlet, ((Stage.FlatMapIterable) stage).getMapper()));
-        } else if (stage instanceof Stage.ProcessorStage) {
-          Processor processor = ((Stage.ProcessorStage) stage).getRsProcessor();
-          addStage(new ConnectorStage(BuiltGraph.this, publisher, processor));
-          addStage(new ConnectorStage(BuiltGraph.this, processor, subscriber));
-        } else {
-          throw new UnsupportedStageException(stage);
-        }
-
-        // Outlets
-      } else {
-        if (stage instanceof Stage.Collect) {
-          addStage(new CollectStage(BuiltGraph.this, inlet, result, ((Stage.Collect) stage).getCollector()));
-        } else if (stage instanceof Stage.FindFirst) {
-          addStage(new FindFirstStage(BuiltGraph.this, inlet, result));
-        } else if (stage instanceof Stage.Cancel) {
-          addStage(new CancelStage(BuiltGraph.this, inlet, result));
-        } else if (stage instanceof Stage.SubscriberStage) {
-          // We need to capture termination, to do that we insert a CaptureTerminationStage between this and the
-          // previous stage.
-          if (inlet == null) {
-            SubscriberInlet subscriberInlet = addPort(createSubscriberInlet());
-            if (publisher != null) {
-              addStage(new ConnectorStage(BuiltGraph.this, publisher, subscriberInlet));
-            } else {
-              firstSubscriber = subscriberInlet;
-            }
-            inlet = subscriberInlet;
-          }
-          PublisherOutlet publisherOutlet = addPort(new PublisherOutlet(BuiltGraph.this));
-          addStage(new CaptureTerminationStage(BuiltGraph.this, inlet, publisherOutlet, result));
-          addStage(new ConnectorStage(BuiltGraph.this, publisherOutlet, ((Stage.SubscriberStage) stage).getRsSubscriber()));
-        } else {
-          throw new UnsupportedStageException(stage);
-        }
-      }
+    private SubscriberInlet createSubscriberInlet() {
+      return new SubscriberInlet(BuiltGraph.this, settings);
     }
 
-    private SubscriberInlet createSubscriberInlet() {
-      return new SubscriberInlet(BuiltGraph.this, DEFAULT_BUFFER_HIGH_WATERMARK, DEFAULT_BUFFER_LOW_WATERMARK);
+    private PublisherOutlet createPublisherOutlet() {
+      return new PublisherOutlet(BuiltGraph.this, settings.getOutletBatchSize());
     }
 
     private <T extends Port> T addPort(T port) {
@@ -454,14 +951,9 @@ class BuiltGraph implements Executor {
       builderStages.add(stage);
     }
 
-    private boolean isSubscriber(Stage stage) {
-      return stage instanceof Stage.SubscriberStage || stage instanceof Stage.ProcessorStage;
+    private BuiltGraph graph() {
+      return BuiltGraph.this;
     }
-
-    private boolean isPublisher(Stage stage) {
-      return stage instanceof Stage.PublisherStage || stage instanceof Stage.ProcessorStage;
-    }
-
   }
 
   /**
@@ -474,45 +966,61 @@ class BuiltGraph implements Executor {
    * Commands are also allowed to (synchronously) emit unrolled signals, by adding them to the unrolledSignals queue.
    * Unrolled signals are used for breaking infinite recursion scenarios. This method will drain all unrolled signals
    * (including subsequent signals emitted by the unrolled signals themselves) after invocation of the command.
+   * <p>
+   * If this is invoked from a thread that is already running a signal for this graph, the command is enqueued as an
+   * unrolled signal, rather than being submitted to the executor.
    *
    * @param command The command to execute in this graphs execution context.
    */
   @Override
   public void execute(Runnable command) {
-    mutex.execute(() -> {
-      try {
-        // First execute the runnable
-        command.run();
-
-        // Now drain a maximum of 32 signals from the queue
-        int signalsDrained = 0;
-        while (!unrolledSignals.isEmpty() && signalsDrained < 32) {
-          signalsDrained++;
-          unrolledSignals.poll().signal();
-        }
+    if (mutex.isRunningOnCurrentThread()) {
+      // We're already running inside this graph, for example, a subscriber has synchronously requested from onNext,
+      // so rather than submitting the command to the executor, unroll it to be run once the current signal is done.
+      unrolledSignals.add(command);
+    } else {
+      mutex.execute(command);
+    }
+  }
 
-        // If there were more than 32 unrolled signals, we resubmit
-        // to the executor to allow us to receive external signals
-        if (!unrolledSignals.isEmpty()) {
-          execute(() -> {
-          });
-        }
+  /**
+   * Run a signal, invoked by the mutex for each command submitted to it.
+   */
+  private void runSignal(Runnable command) {
+    try {
+      // First execute the runnable
+      command.run();
+
+      // Now drain a maximum of signalDrainBudget signals from the queue
+      int signalsDrained = 0;
+      while (!unrolledSignals.isEmpty() && signalsDrained < signalDrainBudget) {
+        signalsDrained++;
+        unrolledSignals.poll().run();
+      }
 
-      } catch (RuntimeException e) {
-        // shut down the stream
-        streamFailure(e);
-        // Clear remaining signals
-        unrolledSignals.clear();
+      // If there were more unrolled signals than the budget, we resubmit
+      // to the executor to allow us to receive external signals
+      if (!unrolledSignals.isEmpty()) {
+        mutex.execute(RESUME_DRAINING);
       }
-    });
+
+    } catch (RuntimeException e) {
+      // shut down the stream
+      streamFailure(e);
+      // Clear remaining signals
+      unrolledSignals.clear();
+    }
   }
 
   /**
    * Start the whole graph.
+   * <p>
+   * Only the given stages, the stages built by the top level builder, are started. Stages may build sub streams when
+   * they start, and those sub streams are started by the stage that builds them.
    */
-  private void startGraph() {
+  private void startGraph(List<GraphStage> graphStages) {
     execute(() -> {
-      for (GraphStage stage : stages) {
+      for (GraphStage stage : graphStages) {
         stage.postStart();
       }
     });
@@ -547,13 +1055,18 @@ class BuiltGraph implements Executor {
     private final StageInlet<T> delegate;
     private final List<GraphStage> subStages;
     private final List<Port> subStagePorts;
+    private final Registry.Group<GraphStage> subStagesGroup;
+    private final Registry.Group<Port> subStagePortsGroup;
 
     private boolean started = false;
 
-    private SubStageInlet(StageInlet<T> delegate, List<GraphStage> subStages, List<Port> subStagePorts) {
+    private SubStageInlet(StageInlet<T> delegate, List<GraphStage> subStages, List<Port> subStagePorts,
+        Registry.Group<GraphStage> subStagesGroup, Registry.Group<Port> subStagePortsGroup) {
       this.delegate = delegate;
       this.subStages = subStages;
       this.subStagePorts = subStagePorts;
+      this.subStagesGroup = subStagesGroup;
+      this.subStagePortsGroup = subStagePortsGroup;
     }
 
     void start() {
@@ -563,8 +1076,8 @@ class BuiltGraph implements Executor {
     }
 
     private void shutdown() {
-      stages.removeAll(subStages);
-      ports.removeAll(subStagePorts);
+      subStagesGroup.remove();
+      subStagePortsGroup.remove();
     }
 
     @Override
@@ -638,9 +1151,16 @@ class BuiltGraph implements Executor {
  * It is possible for stages to get into an infinite recursion, doing push/pulls between each other. This interface
  * allows them to unroll the recursion, by adding the signal to the unrolledSignals queue in this class, which then
  * gets executed after the first callback is executed.
+ * <p>
+ * Unrolled signals are runnable so that they can be queued alongside unrolled commands.
  */
-interface UnrolledSignal {
+interface UnrolledSignal extends Runnable {
   void signal();
+
+  @Override
+  default void run() {
+    signal();
+  }
 }
 
 /**
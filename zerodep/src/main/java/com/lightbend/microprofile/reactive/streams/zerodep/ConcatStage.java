@@ -11,92 +11,237 @@
 
 package com.lightbend.microprofile.reactive.streams.zerodep;
 
-public class ConcatStage<T> extends GraphStage implements OutletListener {
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
-  private final StageInlet<T> first;
-  private final StageInlet<T> second;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A concat stage.
+ * <p>
+ * Nested concats are flattened by the builder, so one concat stage concatenates any number of inputs. Each input is
+ * built as a sub stream only when the previous input completes, so elements only ever pass through one concat stage,
+ * and the cost of building the stage doesn't depend on the number of inputs.
+ * <p>
+ * If the stage is cancelled or an input fails, the inputs that haven't been built yet must be cancelled, since the
+ * publishers in them may hold resources that are only released on cancellation. Where possible, this is done without
+ * building the input, by cancelling its publishers directly, otherwise the input is built and then cancelled.
+ */
+class ConcatStage<T> extends GraphStage implements OutletListener {
+
+  private final Input[] inputs;
   private final StageOutlet<T> outlet;
 
-  private Throwable secondError;
+  /**
+   * The index of the next input to build.
+   */
+  private int next;
+  private BuiltGraph.SubStageInlet<T> current;
+  /**
+   * Set while inputs are being started, so that inputs that complete as soon as they start are moved past in a loop,
+   * rather than recursively.
+   */
+  private boolean starting;
+  private boolean startPending;
 
-  public ConcatStage(BuiltGraph builtGraph, StageInlet<T> first, StageInlet<T> second, StageOutlet<T> outlet) {
+  ConcatStage(BuiltGraph builtGraph, Input[] inputs, StageOutlet<T> outlet) {
     super(builtGraph);
-    this.first = first;
-    this.second = second;
+    this.inputs = inputs;
     this.outlet = outlet;
 
-    first.setListener(new FirstInletListener());
-    second.setListener(new SecondInletListener());
     outlet.setListener(this);
   }
 
+  @Override
+  protected void postStart() {
+    // It's possible that we were cancelled before we started
+    if (!outlet.isClosed()) {
+      startNext();
+    }
+  }
+
+  private void startNext() {
+    if (starting) {
+      startPending = true;
+      return;
+    }
+    starting = true;
+    do {
+      startPending = false;
+      if (next == inputs.length) {
+        outlet.complete();
+      } else {
+        BuiltGraph.SubStageInlet<T> inlet = createSubInlet(inputs[next++].plan);
+        current = inlet;
+        inlet.setListener(new InputListener(inlet));
+        inlet.start();
+        // The input may have already completed when it started, if it was empty
+        if (current == inlet && outlet.isAvailable()) {
+          inlet.pull();
+        }
+      }
+    } while (startPending);
+    starting = false;
+  }
+
+  private void cancelRemaining() {
+    while (next < inputs.length) {
+      Input input = inputs[next++];
+      if (input.publishers != null) {
+        for (Publisher<?> publisher : input.publishers) {
+          publisher.subscribe(new CancellingSubscriber());
+        }
+      } else {
+        BuiltGraph.SubStageInlet<T> inlet = createSubInlet(input.plan);
+        inlet.setListener(CancelledListener.INSTANCE);
+        inlet.start();
+        if (!inlet.isClosed()) {
+          inlet.cancel();
+        }
+      }
+    }
+  }
+
   @Override
   public void onPull() {
-    if (first.isClosed()) {
-      second.pull();
-    } else {
-      first.pull();
+    if (current != null) {
+      current.pull();
     }
   }
 
   @Override
   public void onDownstreamFinish() {
-    if (!first.isClosed()) {
-      first.cancel();
-    }
-    if (!second.isClosed()) {
-      second.cancel();
+    if (current != null && !current.isClosed()) {
+      current.cancel();
     }
+    current = null;
+    cancelRemaining();
   }
 
-  private class FirstInletListener implements InletListener {
+  private class InputListener implements InletListener {
+    private final BuiltGraph.SubStageInlet<T> inlet;
+
+    private InputListener(BuiltGraph.SubStageInlet<T> inlet) {
+      this.inlet = inlet;
+    }
+
     @Override
     public void onPush() {
-      outlet.push(first.grab());
+      outlet.push(inlet.grab());
     }
 
     @Override
     public void onUpstreamFinish() {
-      if (second.isClosed()) {
-        if (secondError != null) {
-          outlet.fail(secondError);
-        } else {
-          outlet.complete();
-        }
-      } else if (outlet.isAvailable()) {
-        second.pull();
-      }
+      current = null;
+      startNext();
     }
 
     @Override
     public void onUpstreamFailure(Throwable error) {
+      current = null;
       outlet.fail(error);
-      if (!second.isClosed()) {
-        second.cancel();
-      }
+      cancelRemaining();
     }
   }
 
-  private class SecondInletListener implements InletListener {
+  /**
+   * Listener for inputs that are cancelled without being run.
+   */
+  private enum CancelledListener implements InletListener {
+    INSTANCE;
+
     @Override
     public void onPush() {
-      outlet.push(second.grab());
     }
 
     @Override
     public void onUpstreamFinish() {
-      if (first.isClosed()) {
-        outlet.complete();
-      }
     }
 
     @Override
     public void onUpstreamFailure(Throwable error) {
-      if (first.isClosed()) {
-        outlet.fail(error);
-      } else {
-        secondError = error;
+    }
+  }
+
+  /**
+   * Subscriber that cancels its subscription as soon as it gets it.
+   */
+  private static final class CancellingSubscriber implements Subscriber<Object> {
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      Objects.requireNonNull(subscription, "Subscription must not be null");
+      subscription.cancel();
+    }
+
+    @Override
+    public void onNext(Object item) {
+      Objects.requireNonNull(item, "Elements passed to onNext must not be null");
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      Objects.requireNonNull(throwable, "Error must not be null");
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+
+  /**
+   * An input of a concat stage.
+   */
+  static final class Input {
+    private final BuiltGraph.Plan plan;
+    /**
+     * The publishers that need to be cancelled to cancel the input without building it, or null if the input has to be
+     * built to be cancelled.
+     */
+    private final List<Publisher<?>> publishers;
+
+    Input(Graph graph, BuiltGraph.Plan plan) {
+      this.plan = plan;
+      this.publishers = publishersToCancel(graph);
+    }
+  }
+
+  /**
+   * Work out which publishers need to be cancelled to cancel the given graph without building it.
+   * <p>
+   * A graph that starts with a publisher, and doesn't contain any processor stages, only holds the resources of that
+   * publisher until it's run, so it can be cancelled by subscribing to and then cancelling the publisher. Graphs that
+   * start with an of or failed stage hold no resources at all. For graphs that start with a concat, this applies to each
+   * of the concatenated graphs.
+   *
+   * @return The publishers, or null if the graph must be built to be cancelled.
+   */
+  private static List<Publisher<?>> publishersToCancel(Graph graph) {
+    List<Publisher<?>> publishers = new ArrayList<>();
+    List<Graph> pending = new ArrayList<>();
+    pending.add(graph);
+    while (!pending.isEmpty()) {
+      Iterator<Stage> stages = pending.remove(pending.size() - 1).getStages().iterator();
+      Stage first = stages.hasNext() ? stages.next() : null;
+      if (first instanceof Stage.PublisherStage) {
+        publishers.add(((Stage.PublisherStage) first).getRsPublisher());
+      } else if (first instanceof Stage.Concat) {
+        pending.add(((Stage.Concat) first).getSecond());
+        pending.add(((Stage.Concat) first).getFirst());
+      } else if (!(first instanceof Stage.Of || first instanceof Stage.Failed)) {
+        return null;
+      }
+      while (stages.hasNext()) {
+        if (stages.next() instanceof Stage.ProcessorStage) {
+          return null;
+        }
       }
     }
+    return publishers;
   }
 }
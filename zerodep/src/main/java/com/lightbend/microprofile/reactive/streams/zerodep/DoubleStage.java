@@ -0,0 +1,116 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A run of double stages, holding the value as a primitive double.
+ * <p>
+ * Sums are accumulated in the order that values are received, without the error compensation that
+ * {@link java.util.stream.DoubleStream#sum()} does.
+ */
+class DoubleStage<T> extends PrimitiveStage<T> {
+
+  private final ToDoubleFunction<Object> entry;
+  private final DoubleFunction<Object> exit;
+
+  /**
+   * The value currently being passed through the operations.
+   */
+  private double value;
+  private double accumulator;
+
+  DoubleStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<Object> outlet, CompletableFuture<Object> result,
+      Run run) {
+    super(builtGraph, inlet, outlet, result, run);
+
+    if (run.getEntry() instanceof ZeroDepStage.MapToDouble) {
+      entry = (ToDoubleFunction) ((ZeroDepStage.MapToDouble) run.getEntry()).getMapper();
+    } else {
+      entry = element -> (Double) element;
+    }
+    if (run.getExit() instanceof ZeroDepStage.DoubleMapToObject) {
+      exit = (DoubleFunction) ((ZeroDepStage.DoubleMapToObject) run.getExit()).getMapper();
+    } else {
+      exit = Double::valueOf;
+    }
+  }
+
+  @Override
+  Operation createOperation(Stage stage) {
+    if (stage instanceof ZeroDepStage.DoubleMap) {
+      DoubleUnaryOperator mapper = ((ZeroDepStage.DoubleMap) stage).getMapper();
+      return () -> {
+        value = mapper.applyAsDouble(value);
+        return true;
+      };
+    } else if (stage instanceof ZeroDepStage.DoubleFilter) {
+      DoublePredicate predicate = ((ZeroDepStage.DoubleFilter) stage).getPredicate().get();
+      return () -> predicate.test(value);
+    } else {
+      throw new IllegalArgumentException("Stage " + stage + " can't be part of a run of double stages");
+    }
+  }
+
+  @Override
+  void enter(T element) {
+    value = entry.applyAsDouble(element);
+  }
+
+  @Override
+  Object exit() {
+    return exit.apply(value);
+  }
+
+  @Override
+  void accumulateFirst() {
+    accumulator = value;
+  }
+
+  @Override
+  void accumulateSum() {
+    accumulator += value;
+  }
+
+  @Override
+  void accumulateMin() {
+    accumulator = Math.min(accumulator, value);
+  }
+
+  @Override
+  void accumulateMax() {
+    accumulator = Math.max(accumulator, value);
+  }
+
+  @Override
+  Object boxedAccumulator() {
+    return accumulator;
+  }
+
+  @Override
+  Object optionalAccumulator() {
+    return OptionalDouble.of(accumulator);
+  }
+
+  @Override
+  Object emptyOptional() {
+    return OptionalDouble.empty();
+  }
+}
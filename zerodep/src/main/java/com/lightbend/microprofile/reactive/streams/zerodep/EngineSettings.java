@@ -0,0 +1,443 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Settings for the zerodep {@link ReactiveStreamsEngineImpl}.
+ * <p>
+ * Settings are immutable, each {@code with} method returns a copy of the settings with the given setting changed.
+ * Settings apply to every graph built by an engine, to use different settings for a particular graph, run that graph
+ * using an engine obtained from {@link ReactiveStreamsEngineImpl#withSettings(EngineSettings)}.
+ */
+public final class EngineSettings {
+
+  private static final int DEFAULT_BUFFER_HIGH_WATERMARK = 8;
+  private static final int DEFAULT_BUFFER_LOW_WATERMARK = 4;
+  private static final boolean DEFAULT_ADAPTIVE_BUFFER = false;
+  private static final int DEFAULT_MAX_BUFFER_HIGH_WATERMARK = 128;
+  private static final int DEFAULT_OUTLET_BATCH_SIZE = 16;
+  private static final int DEFAULT_SIGNAL_DRAIN_BUDGET = 32;
+  private static final int DEFAULT_THROUGHPUT = 128;
+  private static final boolean DEFAULT_INGRESS_QUEUE = false;
+  private static final int DEFAULT_COMPLETION_STAGE_PARALLELISM = 1;
+  private static final boolean DEFAULT_SYNCHRONOUS_GRAPHS_ON_CALLING_THREAD = false;
+  private static final boolean DEFAULT_PARALLEL_SYNCHRONOUS_GRAPHS = false;
+  private static final long DEFAULT_PARALLEL_SYNCHRONOUS_GRAPH_THRESHOLD = 8192;
+
+  private static final EngineSettings DEFAULTS = new EngineSettings(new Copy());
+
+  private final int bufferHighWatermark;
+  private final int bufferLowWatermark;
+  private final boolean adaptiveBuffer;
+  private final int maxBufferHighWatermark;
+  private final int outletBatchSize;
+  private final int signalDrainBudget;
+  private final int throughput;
+  private final boolean ingressQueue;
+  private final int completionStageParallelism;
+  private final boolean synchronousGraphsOnCallingThread;
+  private final boolean parallelSynchronousGraphs;
+  private final long parallelSynchronousGraphThreshold;
+  private final Map<Class<?>, GraphStageFactory<?>> stageFactories;
+
+  private EngineSettings(Copy copy) {
+    this.bufferHighWatermark = copy.bufferHighWatermark;
+    this.bufferLowWatermark = copy.bufferLowWatermark;
+    this.adaptiveBuffer = copy.adaptiveBuffer;
+    this.maxBufferHighWatermark = copy.maxBufferHighWatermark;
+    this.outletBatchSize = copy.outletBatchSize;
+    this.signalDrainBudget = copy.signalDrainBudget;
+    this.throughput = copy.throughput;
+    this.ingressQueue = copy.ingressQueue;
+    this.completionStageParallelism = copy.completionStageParallelism;
+    this.synchronousGraphsOnCallingThread = copy.synchronousGraphsOnCallingThread;
+    this.parallelSynchronousGraphs = copy.parallelSynchronousGraphs;
+    this.parallelSynchronousGraphThreshold = copy.parallelSynchronousGraphThreshold;
+    this.stageFactories = copy.stageFactories;
+  }
+
+  /**
+   * Copy these settings, with the changes made by the given function.
+   */
+  private EngineSettings with(Consumer<Copy> change) {
+    Copy copy = new Copy(this);
+    change.accept(copy);
+    return new EngineSettings(copy);
+  }
+
+  /**
+   * The default settings.
+   */
+  public static EngineSettings defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * The high watermark for the buffers of inlets that subscribe to publishers.
+   * <p>
+   * When an inlet requests more elements from its publisher, it requests enough to bring the number of elements
+   * buffered and outstanding up to this watermark.
+   */
+  public int getBufferHighWatermark() {
+    return bufferHighWatermark;
+  }
+
+  /**
+   * The low watermark for the buffers of inlets that subscribe to publishers.
+   * <p>
+   * An inlet requests more elements from its publisher once the number of elements buffered and outstanding drops to
+   * this watermark.
+   */
+  public int getBufferLowWatermark() {
+    return bufferLowWatermark;
+  }
+
+  /**
+   * Whether inlets adapt their buffer watermarks to how the buffer is used.
+   * <p>
+   * An adaptive inlet starts with the configured watermarks. Each time the inlet is pulled while its buffer is empty,
+   * it doubles the watermarks, up to the {@link #getMaxBufferHighWatermark() max high watermark}. When elements have
+   * been left sitting in the buffer without the inlet running dry, it halves them, down to a high watermark of one.
+   */
+  public boolean isAdaptiveBuffer() {
+    return adaptiveBuffer;
+  }
+
+  /**
+   * The maximum high watermark that an adaptive buffer may grow to.
+   */
+  public int getMaxBufferHighWatermark() {
+    return maxBufferHighWatermark;
+  }
+
+  /**
+   * The number of elements that an outlet that is a publisher may pull and emit in a loop while its subscriber has
+   * outstanding demand, before it yields to allow other signals to be processed.
+   * <p>
+   * Zero means the outlet always yields after emitting an element.
+   */
+  public int getOutletBatchSize() {
+    return outletBatchSize;
+  }
+
+  /**
+   * The maximum number of unrolled signals that a graph will process after handling a signal from outside the graph,
+   * before it yields to allow other signals from outside the graph to be processed.
+   * <p>
+   * A higher budget improves throughput, a lower budget improves fairness between signals.
+   */
+  public int getSignalDrainBudget() {
+    return signalDrainBudget;
+  }
+
+  /**
+   * The maximum number of signals that a graph will process on a thread before handing the thread back to the
+   * executor, and resubmitting itself to process the remaining signals.
+   * <p>
+   * This prevents a single busy graph from monopolising a thread of the executor.
+   */
+  public int getThroughput() {
+    return throughput;
+  }
+
+  /**
+   * Whether inlets that subscribe to publishers use an ingress queue.
+   * <p>
+   * When enabled, elements emitted by the publisher are written to a lock-free ring buffer, sized to the maximum
+   * outstanding demand, and only the first element of each burst schedules a task on the graph, which then drains all
+   * the elements that have arrived. When disabled, each element is submitted to the graph as its own task.
+   */
+  public boolean isIngressQueue() {
+    return ingressQueue;
+  }
+
+  /**
+   * The maximum number of completion stages that a flat map completion stage may have in flight at once.
+   * <p>
+   * Regardless of the parallelism, results are emitted in the order that their elements were received from upstream.
+   * To emit results in the order that they're redeemed instead, use a
+   * {@link ZeroDepStage.UnorderedFlatMapCompletionStage}, which has its own parallelism.
+   */
+  public int getCompletionStageParallelism() {
+    return completionStageParallelism;
+  }
+
+  /**
+   * Whether synchronous closed graphs are run on the thread that runs them, rather than on the executor.
+   * <p>
+   * A closed graph that goes from an of stage, through only map, filter, take while and flat map iterable stages, to a
+   * collect or find first stage, has no asynchronous boundaries, so it's always run in a single loop. By default, that
+   * loop is submitted to the executor as a single task. When enabled, the loop is run on the calling thread, and the
+   * returned completion stage is already completed. This avoids a thread hop, but means the caller is blocked for as
+   * long as the graph takes to run, forever if its source is infinite, so it's disabled by default.
+   */
+  public boolean isSynchronousGraphsOnCallingThread() {
+    return synchronousGraphsOnCallingThread;
+  }
+
+  /**
+   * Whether synchronous closed graphs may be run in parallel.
+   * <p>
+   * When enabled, a synchronous closed graph that contains only map and flat map iterable stages, and ends in a
+   * collect stage, is run in parallel if its source has at least the {@link #getParallelSynchronousGraphThreshold()
+   * threshold} number of elements. The source is split using its spliterator, the splits are run on a fork join pool,
+   * and the partial results are merged using the collector's combiner. Results are in source order, unless the
+   * collector is unordered.
+   * <p>
+   * The fork join pool used is the executor if it's a fork join pool, otherwise it's the common pool. Parallel graphs
+   * are never run on the calling thread. Since the stages' functions are invoked concurrently, they must be thread
+   * safe.
+   */
+  public boolean isParallelSynchronousGraphs() {
+    return parallelSynchronousGraphs;
+  }
+
+  /**
+   * The minimum number of elements in the source of a synchronous closed graph for it to be run in parallel.
+   * <p>
+   * Sources that don't know their size exactly are never run in parallel.
+   */
+  public long getParallelSynchronousGraphThreshold() {
+    return parallelSynchronousGraphThreshold;
+  }
+
+  /**
+   * The factories registered for custom stages, keyed by the type of stage that they create graph stages for.
+   */
+  public Map<Class<?>, GraphStageFactory<?>> getStageFactories() {
+    return stageFactories;
+  }
+
+  /**
+   * Get the factory registered for the given type of stage, or any of its super classes.
+   *
+   * @return The factory, or null if there is none.
+   */
+  GraphStageFactory<?> stageFactoryFor(Class<?> stageType) {
+    for (Class<?> type = stageType; type != null && !stageFactories.isEmpty(); type = type.getSuperclass()) {
+      GraphStageFactory<?> factory = stageFactories.get(type);
+      if (factory != null) {
+        return factory;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Set the buffer watermarks for inlets that subscribe to publishers.
+   *
+   * @param highWatermark The high watermark, must be at least one.
+   * @param lowWatermark The low watermark, must be at least zero, and less than the high watermark.
+   */
+  public EngineSettings withBufferWatermarks(int highWatermark, int lowWatermark) {
+    if (highWatermark < 1) {
+      throw new IllegalArgumentException("High watermark must be at least one");
+    } else if (lowWatermark < 0 || lowWatermark >= highWatermark) {
+      throw new IllegalArgumentException("Low watermark must be at least zero and less than the high watermark");
+    }
+    return with(copy -> {
+      copy.bufferHighWatermark = highWatermark;
+      copy.bufferLowWatermark = lowWatermark;
+      copy.maxBufferHighWatermark = Math.max(highWatermark, maxBufferHighWatermark);
+    });
+  }
+
+  /**
+   * Enable or disable adaptive buffers.
+   *
+   * @param adaptiveBuffer Whether buffers should adapt.
+   * @param maxHighWatermark The maximum high watermark that a buffer may grow to, must be at least the configured high
+   *                         watermark.
+   */
+  public EngineSettings withAdaptiveBuffer(boolean adaptiveBuffer, int maxHighWatermark) {
+    if (maxHighWatermark < bufferHighWatermark) {
+      throw new IllegalArgumentException("Max high watermark must be at least the high watermark");
+    }
+    return with(copy -> {
+      copy.adaptiveBuffer = adaptiveBuffer;
+      copy.maxBufferHighWatermark = maxHighWatermark;
+    });
+  }
+
+  /**
+   * Set the outlet batch size.
+   *
+   * @param outletBatchSize The number of elements an outlet may emit in a loop before yielding, must be at least zero.
+   */
+  public EngineSettings withOutletBatchSize(int outletBatchSize) {
+    if (outletBatchSize < 0) {
+      throw new IllegalArgumentException("Outlet batch size must be at least zero");
+    }
+    return with(copy -> copy.outletBatchSize = outletBatchSize);
+  }
+
+  /**
+   * Set the signal drain budget.
+   *
+   * @param signalDrainBudget The number of unrolled signals to process before yielding, must be at least one.
+   */
+  public EngineSettings withSignalDrainBudget(int signalDrainBudget) {
+    if (signalDrainBudget < 1) {
+      throw new IllegalArgumentException("Signal drain budget must be at least one");
+    }
+    return with(copy -> copy.signalDrainBudget = signalDrainBudget);
+  }
+
+  /**
+   * Set the throughput.
+   *
+   * @param throughput The number of signals a graph may process on a thread before handing it back, must be at least
+   *                   one.
+   */
+  public EngineSettings withThroughput(int throughput) {
+    if (throughput < 1) {
+      throw new IllegalArgumentException("Throughput must be at least one");
+    }
+    return with(copy -> copy.throughput = throughput);
+  }
+
+  /**
+   * Enable or disable the ingress queue.
+   *
+   * @param ingressQueue Whether inlets that subscribe to publishers should use an ingress queue.
+   */
+  public EngineSettings withIngressQueue(boolean ingressQueue) {
+    return with(copy -> copy.ingressQueue = ingressQueue);
+  }
+
+  /**
+   * Set the completion stage parallelism.
+   *
+   * @param completionStageParallelism The number of completion stages a flat map completion stage may have in flight at
+   *                                   once, must be at least one.
+   */
+  public EngineSettings withCompletionStageParallelism(int completionStageParallelism) {
+    if (completionStageParallelism < 1) {
+      throw new IllegalArgumentException("Completion stage parallelism must be at least one");
+    }
+    return with(copy -> copy.completionStageParallelism = completionStageParallelism);
+  }
+
+  /**
+   * Enable or disable running synchronous closed graphs on the calling thread, which is disabled by default.
+   *
+   * @param synchronousGraphsOnCallingThread Whether synchronous closed graphs should be run on the calling thread.
+   */
+  public EngineSettings withSynchronousGraphsOnCallingThread(boolean synchronousGraphsOnCallingThread) {
+    return with(copy -> copy.synchronousGraphsOnCallingThread = synchronousGraphsOnCallingThread);
+  }
+
+  /**
+   * Enable or disable parallel synchronous graphs.
+   *
+   * @param parallelSynchronousGraphs Whether synchronous closed graphs may be run in parallel.
+   * @param threshold The minimum number of source elements for a graph to be run in parallel, must be at least one.
+   */
+  public EngineSettings withParallelSynchronousGraphs(boolean parallelSynchronousGraphs, long threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("Parallel synchronous graph threshold must be at least one");
+    }
+    return with(copy -> {
+      copy.parallelSynchronousGraphs = parallelSynchronousGraphs;
+      copy.parallelSynchronousGraphThreshold = threshold;
+    });
+  }
+
+  /**
+   * Register a factory for a custom type of stage.
+   * <p>
+   * Graphs built with these settings that contain a stage of the given type, or a sub class of it, use the factory to
+   * create the graph stage that implements it. Stages that the engine supports itself can't be replaced. Registering a
+   * factory for a type that already has one replaces it.
+   *
+   * @param stageType The type of stage.
+   * @param factory The factory for graph stages implementing that type of stage.
+   */
+  public <S extends Stage> EngineSettings withStageFactory(Class<S> stageType, GraphStageFactory<? super S> factory) {
+    Objects.requireNonNull(stageType, "Stage type must not be null");
+    Objects.requireNonNull(factory, "Stage factory must not be null");
+    if (BuiltGraph.isBuiltInStage(stageType)) {
+      throw new IllegalArgumentException("Stage type " + stageType.getName() + " is supported by the engine itself");
+    }
+    Map<Class<?>, GraphStageFactory<?>> stageFactories = new HashMap<>(this.stageFactories);
+    stageFactories.put(stageType, factory);
+    return with(copy -> copy.stageFactories = Collections.unmodifiableMap(stageFactories));
+  }
+
+  @Override
+  public String toString() {
+    return "EngineSettings(" +
+        "bufferHighWatermark=" + bufferHighWatermark +
+        ", bufferLowWatermark=" + bufferLowWatermark +
+        ", adaptiveBuffer=" + adaptiveBuffer +
+        ", maxBufferHighWatermark=" + maxBufferHighWatermark +
+        ", outletBatchSize=" + outletBatchSize +
+        ", signalDrainBudget=" + signalDrainBudget +
+        ", throughput=" + throughput +
+        ", ingressQueue=" + ingressQueue +
+        ", completionStageParallelism=" + completionStageParallelism +
+        ", synchronousGraphsOnCallingThread=" + synchronousGraphsOnCallingThread +
+        ", parallelSynchronousGraphs=" + parallelSynchronousGraphs +
+        ", parallelSynchronousGraphThreshold=" + parallelSynchronousGraphThreshold +
+        ", stageFactories=" + stageFactories.keySet() +
+        ")";
+  }
+
+  /**
+   * A mutable copy of settings, that each {@code with} method changes before creating the new settings from it.
+   */
+  private static final class Copy {
+    private int bufferHighWatermark = DEFAULT_BUFFER_HIGH_WATERMARK;
+    private int bufferLowWatermark = DEFAULT_BUFFER_LOW_WATERMARK;
+    private boolean adaptiveBuffer = DEFAULT_ADAPTIVE_BUFFER;
+    private int maxBufferHighWatermark = DEFAULT_MAX_BUFFER_HIGH_WATERMARK;
+    private int outletBatchSize = DEFAULT_OUTLET_BATCH_SIZE;
+    private int signalDrainBudget = DEFAULT_SIGNAL_DRAIN_BUDGET;
+    private int throughput = DEFAULT_THROUGHPUT;
+    private boolean ingressQueue = DEFAULT_INGRESS_QUEUE;
+    private int completionStageParallelism = DEFAULT_COMPLETION_STAGE_PARALLELISM;
+    private boolean synchronousGraphsOnCallingThread = DEFAULT_SYNCHRONOUS_GRAPHS_ON_CALLING_THREAD;
+    private boolean parallelSynchronousGraphs = DEFAULT_PARALLEL_SYNCHRONOUS_GRAPHS;
+    private long parallelSynchronousGraphThreshold = DEFAULT_PARALLEL_SYNCHRONOUS_GRAPH_THRESHOLD;
+    private Map<Class<?>, GraphStageFactory<?>> stageFactories = Collections.emptyMap();
+
+    /**
+     * A copy of the default settings.
+     */
+    private Copy() {
+    }
+
+    private Copy(EngineSettings settings) {
+      this.bufferHighWatermark = settings.bufferHighWatermark;
+      this.bufferLowWatermark = settings.bufferLowWatermark;
+      this.adaptiveBuffer = settings.adaptiveBuffer;
+      this.maxBufferHighWatermark = settings.maxBufferHighWatermark;
+      this.outletBatchSize = settings.outletBatchSize;
+      this.signalDrainBudget = settings.signalDrainBudget;
+      this.throughput = settings.throughput;
+      this.ingressQueue = settings.ingressQueue;
+      this.completionStageParallelism = settings.completionStageParallelism;
+      this.synchronousGraphsOnCallingThread = settings.synchronousGraphsOnCallingThread;
+      this.parallelSynchronousGraphs = settings.parallelSynchronousGraphs;
+      this.parallelSynchronousGraphThreshold = settings.parallelSynchronousGraphThreshold;
+      this.stageFactories = settings.stageFactories;
+    }
+  }
+}
@@ -11,24 +11,35 @@
 
 package com.lightbend.microprofile.reactive.streams.zerodep;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
 
 /**
  * Flat maps to completion stages of elements.
+ *
+ * Up to parallelism completion stages may be in flight at once. Each completion stage is given a slot in a queue, in
+ * the order that its element was received from upstream, and results are only pushed from the head of that queue, so
+ * elements are emitted in upstream order, regardless of the order that the completion stages are redeemed in. If any
+ * completion stage fails, the stream fails immediately.
  */
 class FlatMapCompletionStage<T, R> extends GraphStage implements InletListener, OutletListener {
   private final StageInlet<T> inlet;
   private final StageOutlet<R> outlet;
   private final Function<T, CompletionStage<R>> mapper;
+  private final int parallelism;
 
+  private final Deque<Slot<R>> inFlight = new ArrayDeque<>();
   private Throwable error;
 
-  FlatMapCompletionStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet, Function<T, CompletionStage<R>> mapper) {
+  FlatMapCompletionStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet, Function<T, CompletionStage<R>> mapper,
+      int parallelism) {
     super(builtGraph);
     this.inlet = inlet;
     this.outlet = outlet;
     this.mapper = mapper;
+    this.parallelism = parallelism;
 
     inlet.setListener(this);
     outlet.setListener(this);
@@ -36,20 +47,19 @@ class FlatMapCompletionStage<T, R> extends GraphStage implements InletListener,
 
   @Override
   public void onPush() {
+    Slot<R> slot = new Slot<>();
+    inFlight.add(slot);
     CompletionStage<R> future = mapper.apply(inlet.grab());
     future.whenCompleteAsync((result, error) -> {
       if (!outlet.isClosed()) {
         if (error == null) {
-          outlet.push(result);
-          if (inlet.isClosed()) {
-            if (this.error != null) {
-              outlet.fail(this.error);
-            } else {
-              outlet.complete();
-            }
+          slot.result = result;
+          slot.redeemed = true;
+          if (inFlight.peek() == slot && outlet.isAvailable()) {
+            pushHead();
           }
         } else {
-
+          inFlight.clear();
           outlet.fail(error);
           if (!inlet.isClosed()) {
             inlet.cancel();
@@ -57,35 +67,77 @@ class FlatMapCompletionStage<T, R> extends GraphStage implements InletListener,
         }
       }
     }, executor());
+    pullIfCapacity();
+  }
+
+  private void pushHead() {
+    outlet.push(inFlight.poll().result);
+    if (inlet.isClosed()) {
+      // The push may have caused the outlet to be closed, so check before terminating it
+      if (inFlight.isEmpty() && !outlet.isClosed()) {
+        if (error != null) {
+          outlet.fail(error);
+        } else {
+          outlet.complete();
+        }
+      }
+    } else {
+      pullIfCapacity();
+    }
+  }
+
+  /**
+   * Pull upstream if there's room for another completion stage.
+   * <p>
+   * With a parallelism of one, upstream is only pulled when downstream has pulled, so the mapper is never invoked
+   * ahead of demand. With more, the window is filled ahead of demand, so that completion stages run concurrently.
+   */
+  private void pullIfCapacity() {
+    if (inFlight.size() < parallelism && !inlet.isClosed() && !inlet.isPulled() &&
+        (parallelism > 1 || outlet.isAvailable())) {
+      inlet.pull();
+    }
   }
 
   @Override
   public void onUpstreamFinish() {
-    if (!activeCompletionStage()) {
+    if (inFlight.isEmpty()) {
       outlet.complete();
     }
   }
 
   @Override
   public void onUpstreamFailure(Throwable error) {
-    if (activeCompletionStage()) {
-      this.error = error;
-    } else {
+    if (inFlight.isEmpty()) {
       outlet.fail(error);
+    } else {
+      this.error = error;
     }
   }
 
-  private boolean activeCompletionStage() {
-    return outlet.isAvailable() && !inlet.isPulled();
-  }
-
   @Override
   public void onPull() {
-    inlet.pull();
+    Slot<R> head = inFlight.peek();
+    if (head != null && head.redeemed) {
+      pushHead();
+    } else {
+      pullIfCapacity();
+    }
   }
 
   @Override
   public void onDownstreamFinish() {
-    inlet.cancel();
+    inFlight.clear();
+    if (!inlet.isClosed()) {
+      inlet.cancel();
+    }
+  }
+
+  /**
+   * A slot for the result of a completion stage.
+   */
+  private static final class Slot<R> {
+    private R result;
+    private boolean redeemed;
   }
 }
@@ -12,10 +12,15 @@
 package com.lightbend.microprofile.reactive.streams.zerodep;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
 import java.util.function.Function;
 
 /**
  * A flatmap to iterable stage.
+ *
+ * If an iterable is a random access list, it is walked by index rather than by allocating an iterator for it, and the
+ * stage knows when it has pushed the last element without probing for another.
  */
 class FlatMapIterableStage<T, R> extends GraphStage implements InletListener, OutletListener {
   private final StageInlet<T> inlet;
@@ -24,6 +29,9 @@ class FlatMapIterableStage<T, R> extends GraphStage implements InletListener, Ou
 
   private Throwable error;
   private Iterator<R> iterator;
+  private List<R> list;
+  private int index;
+  private int size;
 
   FlatMapIterableStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet, Function<T, Iterable<R>> mapper) {
     super(builtGraph);
@@ -37,7 +45,25 @@ class FlatMapIterableStage<T, R> extends GraphStage implements InletListener, Ou
 
   @Override
   public void onPush() {
-    Iterator<R> iterator = mapper.apply(inlet.grab()).iterator();
+    Iterable<R> iterable = mapper.apply(inlet.grab());
+
+    if (iterable instanceof List && iterable instanceof RandomAccess) {
+      List<R> list = (List<R>) iterable;
+      int size = list.size();
+      if (size == 0) {
+        inlet.pull();
+      } else {
+        if (size > 1) {
+          this.list = list;
+          this.size = size;
+          this.index = 1;
+        }
+        outlet.push(list.get(0));
+      }
+      return;
+    }
+
+    Iterator<R> iterator = iterable.iterator();
 
     if (iterator.hasNext()) {
       this.iterator = iterator;
@@ -52,16 +78,20 @@ class FlatMapIterableStage<T, R> extends GraphStage implements InletListener, Ou
     }
   }
 
+  private boolean emitting() {
+    return iterator != null || list != null;
+  }
+
   @Override
   public void onUpstreamFinish() {
-    if (iterator == null) {
+    if (!emitting()) {
       outlet.complete();
     }
   }
 
   @Override
   public void onUpstreamFailure(Throwable error) {
-    if (iterator == null) {
+    if (!emitting()) {
       outlet.fail(error);
     } else {
       this.error = error;
@@ -70,20 +100,34 @@ class FlatMapIterableStage<T, R> extends GraphStage implements InletListener, Ou
 
   @Override
   public void onPull() {
-    if (iterator == null) {
+    if (list != null) {
+      R element = list.get(index++);
+      boolean last = index == size;
+      if (last) {
+        list = null;
+      }
+      outlet.push(element);
+      if (last) {
+        completeIfUpstreamFinished();
+      }
+    } else if (iterator == null) {
       inlet.pull();
     } else {
       Iterator<R> iterator = this.iterator;
       outlet.push(iterator.next());
       if (!iterator.hasNext() && this.iterator == iterator) {
         this.iterator = null;
-        if (inlet.isClosed()) {
-          if (error != null) {
-            outlet.fail(error);
-          } else {
-            outlet.complete();
-          }
-        }
+        completeIfUpstreamFinished();
+      }
+    }
+  }
+
+  private void completeIfUpstreamFinished() {
+    if (inlet.isClosed()) {
+      if (error != null) {
+        outlet.fail(error);
+      } else {
+        outlet.complete();
       }
     }
   }
@@ -0,0 +1,183 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A flat map stage that runs up to parallelism sub streams at once, emitting their elements in the order that they
+ * arrive.
+ *
+ * Each running sub stream is pulled for one element at a time. Elements that arrive while downstream hasn't pulled are
+ * held by their sub stream, which is queued to be emitted from when downstream next pulls, so at most one element per
+ * sub stream is ever buffered. A sub stream counts towards the parallelism until it has finished and its last element
+ * has been emitted.
+ */
+class FlatMapMergeStage<T, R> extends GraphStage implements InletListener, OutletListener {
+  private final StageInlet<T> inlet;
+  private final StageOutlet<R> outlet;
+  private final Function<T, Graph> mapper;
+  private final int parallelism;
+
+  private final List<SubStream> running = new ArrayList<>();
+  private final Deque<SubStream> ready = new ArrayDeque<>();
+  private boolean finished;
+
+  FlatMapMergeStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet, Function<T, Graph> mapper,
+      int parallelism) {
+    super(builtGraph);
+    this.inlet = inlet;
+    this.outlet = outlet;
+    this.mapper = mapper;
+    this.parallelism = parallelism;
+
+    inlet.setListener(this);
+    outlet.setListener(this);
+  }
+
+  @Override
+  public void onPush() {
+    Graph graph = mapper.apply(inlet.grab());
+    SubStream subStream = new SubStream(createSubInlet(graph));
+    running.add(subStream);
+    subStream.subInlet.setListener(subStream);
+    subStream.subInlet.start();
+    // The sub stream may have already completed when it started, if it was empty
+    if (!subStream.subInlet.isClosed()) {
+      subStream.subInlet.pull();
+    }
+    pullIfCapacity();
+  }
+
+  @Override
+  public void onUpstreamFinish() {
+    completeIfDone();
+  }
+
+  @Override
+  public void onUpstreamFailure(Throwable error) {
+    failWith(error);
+  }
+
+  @Override
+  public void onPull() {
+    SubStream subStream = ready.poll();
+    if (subStream != null) {
+      emit(subStream);
+    } else {
+      pullIfCapacity();
+    }
+  }
+
+  @Override
+  public void onDownstreamFinish() {
+    finished = true;
+    if (!inlet.isClosed()) {
+      inlet.cancel();
+    }
+    cancelRunning();
+  }
+
+  private void emit(SubStream subStream) {
+    R element = subStream.element;
+    subStream.element = null;
+    outlet.push(element);
+    if (subStream.subInlet.isClosed()) {
+      release(subStream);
+    } else {
+      subStream.subInlet.pull();
+    }
+  }
+
+  private void release(SubStream subStream) {
+    running.remove(subStream);
+    if (inlet.isClosed()) {
+      completeIfDone();
+    } else {
+      pullIfCapacity();
+    }
+  }
+
+  private void pullIfCapacity() {
+    if (!finished && running.size() < parallelism && !inlet.isClosed() && !inlet.isPulled()) {
+      inlet.pull();
+    }
+  }
+
+  private void completeIfDone() {
+    if (!finished && running.isEmpty()) {
+      finished = true;
+      outlet.complete();
+    }
+  }
+
+  private void failWith(Throwable error) {
+    if (!finished) {
+      finished = true;
+      outlet.fail(error);
+      if (!inlet.isClosed()) {
+        inlet.cancel();
+      }
+      cancelRunning();
+    }
+  }
+
+  private void cancelRunning() {
+    List<SubStream> toCancel = new ArrayList<>(running);
+    running.clear();
+    ready.clear();
+    for (SubStream subStream : toCancel) {
+      if (!subStream.subInlet.isClosed()) {
+        subStream.subInlet.cancel();
+      }
+    }
+  }
+
+  private class SubStream implements InletListener {
+    private final BuiltGraph.SubStageInlet<R> subInlet;
+    private R element;
+
+    private SubStream(BuiltGraph.SubStageInlet<R> subInlet) {
+      this.subInlet = subInlet;
+    }
+
+    @Override
+    public void onPush() {
+      element = subInlet.grab();
+      if (outlet.isAvailable()) {
+        emit(this);
+      } else {
+        ready.add(this);
+      }
+    }
+
+    @Override
+    public void onUpstreamFinish() {
+      // If an element is still waiting to be emitted, it's released once it has been
+      if (element == null && !finished) {
+        release(this);
+      }
+    }
+
+    @Override
+    public void onUpstreamFailure(Throwable error) {
+      running.remove(this);
+      failWith(error);
+    }
+  }
+}
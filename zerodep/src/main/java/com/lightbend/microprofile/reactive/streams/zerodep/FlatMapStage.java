@@ -12,15 +12,29 @@
 package com.lightbend.microprofile.reactive.streams.zerodep;
 
 import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.function.Function;
 
+/**
+ * A flat map stage.
+ * <p>
+ * When the mapper returns a graph that consists of nothing but a single of or failed stage, the elements or error are
+ * emitted directly by this stage, in the same way that {@link FlatMapIterableStage} emits elements, without building
+ * a sub stream for them.
+ */
 class FlatMapStage<T, R> extends GraphStage implements InletListener, OutletListener {
   private final StageInlet<T> inlet;
   private final StageOutlet<R> outlet;
   private final Function<T, Graph> mapper;
 
   private BuiltGraph.SubStageInlet<R> substream;
+  /**
+   * The elements being emitted, if the graph was a single of stage.
+   */
+  private Iterator<R> iterator;
   private Throwable error;
 
   FlatMapStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet, Function<T, Graph> mapper) {
@@ -36,11 +50,26 @@ class FlatMapStage<T, R> extends GraphStage implements InletListener, OutletList
   @Override
   public void onPush() {
     Graph graph = mapper.apply(inlet.grab());
-    substream = createSubInlet(graph);
-    substream.setListener(new InletListener() {
+
+    Collection<Stage> stages = graph.getStages();
+    if (stages.size() == 1) {
+      Stage stage = stages.iterator().next();
+      if (stage instanceof Stage.Of) {
+        emitElements(((Stage.Of) stage).getElements());
+        return;
+      } else if (stage instanceof Stage.Failed) {
+        outlet.fail(((Stage.Failed) stage).getError());
+        inlet.cancel();
+        return;
+      }
+    }
+
+    BuiltGraph.SubStageInlet<R> subInlet = createSubInlet(graph);
+    substream = subInlet;
+    subInlet.setListener(new InletListener() {
       @Override
       public void onPush() {
-        outlet.push(substream.grab());
+        outlet.push(subInlet.grab());
       }
 
       @Override
@@ -65,20 +94,39 @@ class FlatMapStage<T, R> extends GraphStage implements InletListener, OutletList
         }
       }
     });
-    substream.start();
-    substream.pull();
+    subInlet.start();
+    // The sub stream may have already completed when it started, if it was empty
+    if (substream == subInlet) {
+      subInlet.pull();
+    }
+  }
+
+  private void emitElements(Iterable<?> elements) {
+    Iterator<R> iterator = (Iterator<R>) elements.iterator();
+
+    if (iterator.hasNext()) {
+      this.iterator = iterator;
+
+      outlet.push(iterator.next());
+      // Make sure we're still on the same iterator in case a recursive call changed things
+      if (!iterator.hasNext() && this.iterator == iterator) {
+        this.iterator = null;
+      }
+    } else {
+      inlet.pull();
+    }
   }
 
   @Override
   public void onUpstreamFinish() {
-    if (substream == null) {
+    if (substream == null && iterator == null) {
       outlet.complete();
     }
   }
 
   @Override
   public void onUpstreamFailure(Throwable error) {
-    if (substream == null) {
+    if (substream == null && iterator == null) {
       outlet.fail(error);
     } else {
       this.error = error;
@@ -87,7 +135,20 @@ class FlatMapStage<T, R> extends GraphStage implements InletListener, OutletList
 
   @Override
   public void onPull() {
-    if (substream == null) {
+    if (iterator != null) {
+      Iterator<R> iterator = this.iterator;
+      outlet.push(iterator.next());
+      if (!iterator.hasNext() && this.iterator == iterator) {
+        this.iterator = null;
+        if (inlet.isClosed()) {
+          if (error != null) {
+            outlet.fail(error);
+          } else {
+            outlet.complete();
+          }
+        }
+      }
+    } else if (substream == null) {
       inlet.pull();
     } else {
       substream.pull();
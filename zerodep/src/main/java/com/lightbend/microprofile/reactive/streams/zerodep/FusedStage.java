@@ -0,0 +1,230 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A fused stage.
+ * <p>
+ * Runs of consecutive map, filter and take while stages are collapsed by the builder into a single fused stage, which
+ * applies each of the operations to an element in a loop. This means elements don't need to pass through a port, and
+ * be unrolled as a signal, for each of the stages in the run.
+ */
+class FusedStage<T, R> extends GraphStage implements InletListener, OutletListener {
+
+  /**
+   * Returned by an operation to indicate that the element has been dropped.
+   */
+  private static final Object DROPPED = new Object();
+
+  private final StageInlet<T> inlet;
+  private final StageOutlet<R> outlet;
+  private final Operation[] operations;
+
+  /**
+   * Set by a take while operation when its predicate fails, indicating that the stage should complete once the current
+   * element has been handled.
+   */
+  private boolean finishing;
+
+  FusedStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet, List<Stage> stages) {
+    super(builtGraph);
+    this.inlet = inlet;
+    this.outlet = outlet;
+
+    operations = new Operation[stages.size()];
+    for (int i = 0; i < operations.length; i++) {
+      operations[i] = createOperation(stages.get(i));
+    }
+
+    inlet.setListener(this);
+    outlet.setListener(this);
+  }
+
+  private Operation createOperation(Stage stage) {
+    if (stage instanceof Stage.Map) {
+      return new MapOperation(((Stage.Map) stage).getMapper());
+    } else if (stage instanceof Stage.Filter) {
+      return new FilterOperation(((Stage.Filter) stage).getPredicate().get());
+    } else if (stage instanceof Stage.TakeWhile) {
+      return new TakeWhileOperation(((Stage.TakeWhile) stage).getPredicate().get(),
+          ((Stage.TakeWhile) stage).isInclusive());
+    } else {
+      throw new IllegalArgumentException("Stage " + stage + " can't be fused");
+    }
+  }
+
+  @Override
+  public void onPush() {
+    Object element = inlet.grab();
+    for (int i = 0; i < operations.length && element != DROPPED; i++) {
+      element = operations[i].apply(element);
+    }
+
+    if (element != DROPPED) {
+      outlet.push((R) element);
+    }
+
+    if (finishing) {
+      outlet.complete();
+      inlet.cancel();
+    } else if (element == DROPPED) {
+      inlet.pull();
+    }
+  }
+
+  @Override
+  public void onUpstreamFinish() {
+    outlet.complete();
+  }
+
+  @Override
+  public void onUpstreamFailure(Throwable error) {
+    outlet.fail(error);
+  }
+
+  @Override
+  public void onPull() {
+    inlet.pull();
+  }
+
+  @Override
+  public void onDownstreamFinish() {
+    inlet.cancel();
+  }
+
+  /**
+   * Whether the given stage can be fused.
+   */
+  static boolean isFusable(Stage stage) {
+    return stage instanceof Stage.Map || stage instanceof Stage.Filter || stage instanceof Stage.TakeWhile;
+  }
+
+  /**
+   * Collapse each run of two or more consecutive fusable stages in the given stages into a single {@link Fused} stage.
+   */
+  static Collection<Stage> fuse(Collection<Stage> stages) {
+    List<Stage> fused = new ArrayList<>(stages.size());
+    List<Stage> run = new ArrayList<>();
+    for (Stage stage : stages) {
+      if (isFusable(stage)) {
+        run.add(stage);
+      } else {
+        flushRun(run, fused);
+        fused.add(stage);
+      }
+    }
+    flushRun(run, fused);
+    return fused;
+  }
+
+  private static void flushRun(List<Stage> run, List<Stage> fused) {
+    if (run.size() == 1) {
+      fused.add(run.get(0));
+    } else if (run.size() > 1) {
+      fused.add(new Fused(new ArrayList<>(run)));
+    }
+    run.clear();
+  }
+
+  /**
+   * The graph stage that a run of fusable stages gets replaced with when the graph is built.
+   */
+  static final class Fused implements Stage {
+    private final List<Stage> stages;
+
+    private Fused(List<Stage> stages) {
+      this.stages = stages;
+    }
+
+    List<Stage> getStages() {
+      return stages;
+    }
+
+    @Override
+    public boolean hasInlet() {
+      return true;
+    }
+
+    @Override
+    public boolean hasOutlet() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "Fused" + stages;
+    }
+  }
+
+  private interface Operation {
+    /**
+     * Apply the operation to the given element.
+     *
+     * @return The element to pass to the next operation, or {@link #DROPPED} if the element has been dropped.
+     */
+    Object apply(Object element);
+  }
+
+  private static final class MapOperation implements Operation {
+    private final Function<Object, Object> mapper;
+
+    private MapOperation(Function mapper) {
+      this.mapper = mapper;
+    }
+
+    @Override
+    public Object apply(Object element) {
+      return mapper.apply(element);
+    }
+  }
+
+  private static final class FilterOperation implements Operation {
+    private final Predicate<Object> predicate;
+
+    private FilterOperation(Predicate predicate) {
+      this.predicate = predicate;
+    }
+
+    @Override
+    public Object apply(Object element) {
+      return predicate.test(element) ? element : DROPPED;
+    }
+  }
+
+  private final class TakeWhileOperation implements Operation {
+    private final Predicate<Object> predicate;
+    private final boolean inclusive;
+
+    private TakeWhileOperation(Predicate predicate, boolean inclusive) {
+      this.predicate = predicate;
+      this.inclusive = inclusive;
+    }
+
+    @Override
+    public Object apply(Object element) {
+      if (predicate.test(element)) {
+        return element;
+      } else {
+        finishing = true;
+        return inclusive ? element : DROPPED;
+      }
+    }
+  }
+}
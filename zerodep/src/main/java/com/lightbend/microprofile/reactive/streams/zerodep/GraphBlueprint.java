@@ -0,0 +1,81 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.SubscriberWithResult;
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * A graph that has been compiled, ready to be built any number of times.
+ * <p>
+ * Building a graph involves walking its stages, working out what type each stage is and which ports need to go between
+ * them. When the same graph is built many times, this work can be done once, by compiling the graph to a blueprint
+ * using {@link ReactiveStreamsEngineImpl#compile(Graph)}, and then building the blueprint each time.
+ * <p>
+ * Blueprints are immutable and may be built concurrently. Each build instantiates new stages, and invokes any
+ * suppliers, such as the predicate suppliers of filter stages, again. Publishers, subscribers and processors that are
+ * stages of the graph are however used as is, so a blueprint containing a subscriber or processor stage can, like the
+ * graph it was compiled from, only be built once.
+ */
+public final class GraphBlueprint {
+
+  private final Executor executor;
+  private final EngineSettings settings;
+  private final BuiltGraph.Plan plan;
+
+  GraphBlueprint(Executor executor, EngineSettings settings, BuiltGraph.Plan plan) {
+    this.executor = executor;
+    this.settings = settings;
+    this.plan = plan;
+  }
+
+  /**
+   * Build the blueprint as a publisher.
+   *
+   * @throws NullPointerException If the graph does not have a publisher shape.
+   */
+  public <T> Publisher<T> buildPublisher() {
+    return BuiltGraph.buildPublisher(executor, settings, plan);
+  }
+
+  /**
+   * Build the blueprint as a subscriber.
+   *
+   * @throws NullPointerException If the graph does not have a subscriber shape.
+   */
+  public <T, R> SubscriberWithResult<T, R> buildSubscriber() {
+    return BuiltGraph.buildSubscriber(executor, settings, plan);
+  }
+
+  /**
+   * Build the blueprint as a processor.
+   *
+   * @throws NullPointerException If the graph does not have a processor shape.
+   */
+  public <T, R> Processor<T, R> buildProcessor() {
+    return BuiltGraph.buildProcessor(executor, settings, plan);
+  }
+
+  /**
+   * Build the blueprint as a closed graph.
+   *
+   * @throws NullPointerException If the graph is not closed.
+   */
+  public <T> CompletionStage<T> buildCompletion() {
+    return BuiltGraph.buildCompletion(executor, settings, plan);
+  }
+}
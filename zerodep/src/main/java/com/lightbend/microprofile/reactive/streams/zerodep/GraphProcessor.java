@@ -0,0 +1,104 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * A processor graph built by this engine.
+ * <p>
+ * The graph is built when it's first subscribed to, or when it first receives a subscription, unless it has been
+ * spliced into another graph first.
+ */
+final class GraphProcessor<T, R> extends SplicableGraph<Processor<T, R>> implements Processor<T, R> {
+
+  GraphProcessor(Executor executor, EngineSettings settings, BuiltGraph.Plan plan) {
+    super(executor, settings, plan);
+  }
+
+  @Override
+  protected Processor<T, R> build(Executor executor, EngineSettings settings, BuiltGraph.Plan plan) {
+    return BuiltGraph.startProcessor(executor, settings, plan);
+  }
+
+  @Override
+  protected Processor<T, R> alreadySpliced() {
+    IllegalStateException error =
+        new IllegalStateException("This processor has already been spliced into another graph");
+    return new Processor<T, R>() {
+      @Override
+      public void subscribe(Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber must not be null");
+        subscriber.onSubscribe(new Subscription() {
+          @Override
+          public void request(long n) {
+          }
+
+          @Override
+          public void cancel() {
+          }
+        });
+        subscriber.onError(error);
+      }
+
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        Objects.requireNonNull(subscription, "Subscription must not be null");
+        subscription.cancel();
+      }
+
+      @Override
+      public void onNext(T item) {
+        Objects.requireNonNull(item, "Elements passed to onNext must not be null");
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable, "Error must not be null");
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    };
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super R> subscriber) {
+    built().subscribe(subscriber);
+  }
+
+  @Override
+  public void onSubscribe(Subscription subscription) {
+    built().onSubscribe(subscription);
+  }
+
+  @Override
+  public void onNext(T item) {
+    built().onNext(item);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    built().onError(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    built().onComplete();
+  }
+}
@@ -0,0 +1,58 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * A publisher graph built by this engine.
+ * <p>
+ * The graph is built when it's first subscribed to, unless it has been spliced into another graph first.
+ */
+final class GraphPublisher<T> extends SplicableGraph<Publisher<T>> implements Publisher<T> {
+
+  GraphPublisher(Executor executor, EngineSettings settings, BuiltGraph.Plan plan) {
+    super(executor, settings, plan);
+  }
+
+  @Override
+  protected Publisher<T> build(Executor executor, EngineSettings settings, BuiltGraph.Plan plan) {
+    return BuiltGraph.startPublisher(executor, settings, plan);
+  }
+
+  @Override
+  protected Publisher<T> alreadySpliced() {
+    return subscriber -> {
+      Objects.requireNonNull(subscriber, "Subscriber must not be null");
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("This publisher has already been spliced into another graph"));
+    };
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    built().subscribe(subscriber);
+  }
+}
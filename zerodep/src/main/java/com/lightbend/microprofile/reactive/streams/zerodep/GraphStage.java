@@ -17,8 +17,13 @@ import java.util.concurrent.Executor;
 
 /**
  * Superclass of all graph stages.
+ * <p>
+ * Custom stages may extend this, to implement an operator against the inlets and outlets of a graph, by registering a
+ * {@link GraphStageFactory} that creates them. All signals to a graph stage, from its inlet and outlet listeners, as
+ * well as {@link #postStart()}, are invoked serially, so stages need no synchronization of their own, but they must not
+ * block.
  */
-abstract class GraphStage {
+public abstract class GraphStage {
 
   private final BuiltGraph builtGraph;
 
@@ -26,6 +31,15 @@ abstract class GraphStage {
     this.builtGraph = builtGraph;
   }
 
+  /**
+   * Create a custom graph stage.
+   *
+   * @param context The context that was passed to the {@link GraphStageFactory} creating this stage.
+   */
+  protected GraphStage(StageContext context) {
+    this(context.builtGraph());
+  }
+
   /**
    * Create a sub inlet for the given graph.
    * <p>
@@ -34,10 +48,28 @@ abstract class GraphStage {
    * @param graph The graph.
    * @return The inlet.
    */
-  protected <T> BuiltGraph.SubStageInlet<T> createSubInlet(Graph graph) {
+  <T> BuiltGraph.SubStageInlet<T> createSubInlet(Graph graph) {
     return builtGraph.buildSubInlet(graph);
   }
 
+  /**
+   * Create a sub inlet for the given plan.
+   * <p>
+   * The plan must have been compiled as an inlet graph.
+   *
+   * @param plan The plan.
+   * @return The inlet.
+   */
+  <T> BuiltGraph.SubStageInlet<T> createSubInlet(BuiltGraph.Plan plan) {
+    return builtGraph.buildSubInlet(plan);
+  }
+
+  /**
+   * An executor that runs tasks serially with the signals to the stages of this graph.
+   * <p>
+   * Stages that receive callbacks from outside the graph, such as the completion of a future, should use this to get
+   * back onto the graph before interacting with their inlets and outlets.
+   */
   protected Executor executor() {
     return builtGraph;
   }
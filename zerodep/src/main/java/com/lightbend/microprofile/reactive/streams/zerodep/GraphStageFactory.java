@@ -0,0 +1,45 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+/**
+ * A factory for graph stages that implement a custom stage.
+ * <p>
+ * This allows custom operators to be implemented natively against the inlets and outlets of a graph, rather than as a
+ * {@link Stage.ProcessorStage}, which needs a subscriber and a publisher to connect it to the rest of the graph, and so
+ * has to buffer elements and follow the Reactive Streams protocol for each element. Factories are registered for a
+ * type of stage using {@link EngineSettings#withStageFactory(Class, GraphStageFactory)}, and are invoked each time a
+ * graph containing a stage of that type is built.
+ * <p>
+ * The stage itself, such as a stage implementing {@link ZeroDepStage}, describes the operator, and whether it has an
+ * inlet and outlet. The factory creates the {@link GraphStage} that implements it, attaching it to the inlet and outlet
+ * provided by the context.
+ *
+ * @param <S> The type of stage that this factory creates graph stages for.
+ */
+@FunctionalInterface
+public interface GraphStageFactory<S extends Stage> {
+
+  /**
+   * Create a graph stage for the given stage.
+   * <p>
+   * The returned graph stage must have set itself as the listener of the inlet and outlet of the context that the stage
+   * has, and must be passed that context in its constructor.
+   *
+   * @param stage The stage to create a graph stage for.
+   * @param context The context to create the graph stage in.
+   * @return The graph stage.
+   */
+  GraphStage createStage(S stage, StageContext context);
+}
@@ -0,0 +1,34 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+/**
+ * A listener for signals to an inlet.
+ */
+public interface InletListener {
+
+  /**
+   * Indicates that an element has been pushed. The element can be received using {@link StageInlet#grab()}.
+   */
+  void onPush();
+
+  /**
+   * Indicates that upstream has completed the stream. No signals may be sent to the inlet after this has been invoked.
+   */
+  void onUpstreamFinish();
+
+  /**
+   * Indicates that upstream has completed the stream with a failure. No signals may be sent to the inlet after this has
+   * been invoked.
+   */
+  void onUpstreamFailure(Throwable error);
+}
@@ -0,0 +1,115 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * A run of int stages, holding the value as a primitive int.
+ * <p>
+ * Like {@link java.util.stream.IntStream#sum()}, sums overflow silently.
+ */
+class IntStage<T> extends PrimitiveStage<T> {
+
+  private final ToIntFunction<Object> entry;
+  private final IntFunction<Object> exit;
+
+  /**
+   * The value currently being passed through the operations.
+   */
+  private int value;
+  private int accumulator;
+
+  IntStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<Object> outlet, CompletableFuture<Object> result,
+      Run run) {
+    super(builtGraph, inlet, outlet, result, run);
+
+    if (run.getEntry() instanceof ZeroDepStage.MapToInt) {
+      entry = (ToIntFunction) ((ZeroDepStage.MapToInt) run.getEntry()).getMapper();
+    } else {
+      entry = element -> (Integer) element;
+    }
+    if (run.getExit() instanceof ZeroDepStage.IntMapToObject) {
+      exit = (IntFunction) ((ZeroDepStage.IntMapToObject) run.getExit()).getMapper();
+    } else {
+      exit = Integer::valueOf;
+    }
+  }
+
+  @Override
+  Operation createOperation(Stage stage) {
+    if (stage instanceof ZeroDepStage.IntMap) {
+      IntUnaryOperator mapper = ((ZeroDepStage.IntMap) stage).getMapper();
+      return () -> {
+        value = mapper.applyAsInt(value);
+        return true;
+      };
+    } else if (stage instanceof ZeroDepStage.IntFilter) {
+      IntPredicate predicate = ((ZeroDepStage.IntFilter) stage).getPredicate().get();
+      return () -> predicate.test(value);
+    } else {
+      throw new IllegalArgumentException("Stage " + stage + " can't be part of a run of int stages");
+    }
+  }
+
+  @Override
+  void enter(T element) {
+    value = entry.applyAsInt(element);
+  }
+
+  @Override
+  Object exit() {
+    return exit.apply(value);
+  }
+
+  @Override
+  void accumulateFirst() {
+    accumulator = value;
+  }
+
+  @Override
+  void accumulateSum() {
+    accumulator += value;
+  }
+
+  @Override
+  void accumulateMin() {
+    accumulator = Math.min(accumulator, value);
+  }
+
+  @Override
+  void accumulateMax() {
+    accumulator = Math.max(accumulator, value);
+  }
+
+  @Override
+  Object boxedAccumulator() {
+    return accumulator;
+  }
+
+  @Override
+  Object optionalAccumulator() {
+    return OptionalInt.of(accumulator);
+  }
+
+  @Override
+  Object emptyOptional() {
+    return OptionalInt.empty();
+  }
+}
@@ -0,0 +1,113 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ * A run of long stages, holding the value as a primitive long.
+ */
+class LongStage<T> extends PrimitiveStage<T> {
+
+  private final ToLongFunction<Object> entry;
+  private final LongFunction<Object> exit;
+
+  /**
+   * The value currently being passed through the operations.
+   */
+  private long value;
+  private long accumulator;
+
+  LongStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<Object> outlet, CompletableFuture<Object> result,
+      Run run) {
+    super(builtGraph, inlet, outlet, result, run);
+
+    if (run.getEntry() instanceof ZeroDepStage.MapToLong) {
+      entry = (ToLongFunction) ((ZeroDepStage.MapToLong) run.getEntry()).getMapper();
+    } else {
+      entry = element -> (Long) element;
+    }
+    if (run.getExit() instanceof ZeroDepStage.LongMapToObject) {
+      exit = (LongFunction) ((ZeroDepStage.LongMapToObject) run.getExit()).getMapper();
+    } else {
+      exit = Long::valueOf;
+    }
+  }
+
+  @Override
+  Operation createOperation(Stage stage) {
+    if (stage instanceof ZeroDepStage.LongMap) {
+      LongUnaryOperator mapper = ((ZeroDepStage.LongMap) stage).getMapper();
+      return () -> {
+        value = mapper.applyAsLong(value);
+        return true;
+      };
+    } else if (stage instanceof ZeroDepStage.LongFilter) {
+      LongPredicate predicate = ((ZeroDepStage.LongFilter) stage).getPredicate().get();
+      return () -> predicate.test(value);
+    } else {
+      throw new IllegalArgumentException("Stage " + stage + " can't be part of a run of long stages");
+    }
+  }
+
+  @Override
+  void enter(T element) {
+    value = entry.applyAsLong(element);
+  }
+
+  @Override
+  Object exit() {
+    return exit.apply(value);
+  }
+
+  @Override
+  void accumulateFirst() {
+    accumulator = value;
+  }
+
+  @Override
+  void accumulateSum() {
+    accumulator += value;
+  }
+
+  @Override
+  void accumulateMin() {
+    accumulator = Math.min(accumulator, value);
+  }
+
+  @Override
+  void accumulateMax() {
+    accumulator = Math.max(accumulator, value);
+  }
+
+  @Override
+  Object boxedAccumulator() {
+    return accumulator;
+  }
+
+  @Override
+  Object optionalAccumulator() {
+    return OptionalLong.of(accumulator);
+  }
+
+  @Override
+  Object emptyOptional() {
+    return OptionalLong.empty();
+  }
+}
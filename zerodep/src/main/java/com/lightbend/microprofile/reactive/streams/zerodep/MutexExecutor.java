@@ -11,9 +11,13 @@
 
 package com.lightbend.microprofile.reactive.streams.zerodep;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Executor that provides mutual exclusion between the operations submitted to it.
@@ -21,23 +25,70 @@ import java.util.concurrent.atomic.AtomicReference;
  * All operations are delegated to the wrapped executor, however only one operation
  * at a time will be submitted to that executor. The queuing of operations is done
  * in a non blocking fashion.
+ *
+ * Once the runner has run throughput operations, it resubmits itself to the wrapped
+ * executor, rather than continuing to run, so that one busy executor can't monopolise
+ * a thread of the wrapped executor. If the wrapped executor runs the runner synchronously,
+ * as a direct executor does, the runner detects that it has been run from its own
+ * resubmission, and the resubmitting runner carries on running instead, rather than
+ * recursing.
+ *
+ * Queue nodes are recycled through a small set of spare node slots. Only the runner
+ * puts nodes into the slots, and submitters take them out with an atomic exchange, so
+ * a node is never handed to two submitters at once.
+ *
+ * Subclasses may override {@link #runTask(Runnable)} to wrap the running of each operation, without needing to allocate
+ * a wrapper for each operation that is submitted.
  */
-final class MutexExecutor implements Executor {
+class MutexExecutor implements Executor {
+  private static final int SPARE_NODES = 8;
+  private static final int SPINS_BEFORE_YIELD = 128;
+  private static final MethodHandle ON_SPIN_WAIT = onSpinWaitHandle();
+  // The resubmission that the runner on the current thread is doing, if any
+  private static final ThreadLocal<Resubmission> RESUBMISSION = ThreadLocal.withInitial(Resubmission::new);
+
   private final Executor delegate;
+  private final int throughput;
   private final AtomicReference<RunNode> last = new AtomicReference<>();
+  private final AtomicReferenceArray<RunNode> spareNodes = new AtomicReferenceArray<>(SPARE_NODES);
+  private final Runnable runner = this::runAll;
+  // The node that the runner starts from. Only written before the runner is submitted to the delegate.
+  private RunNode head;
+  // The thread that is currently running operations. Only ever written by the runner, so a thread will only ever read
+  // itself from this if it is the runner, even without synchronization.
+  private Thread runningThread;
 
   MutexExecutor(Executor delegate) {
+    this(delegate, Integer.MAX_VALUE);
+  }
+
+  MutexExecutor(Executor delegate, int throughput) {
+    if (throughput < 1) {
+      throw new IllegalArgumentException("Throughput must be at least one");
+    }
     this.delegate = delegate;
+    this.throughput = throughput;
   }
 
   @Override
   public void execute(final Runnable command) {
-    final RunNode newNode = new RunNode(Objects.requireNonNull(command, "Runnable must not be null"));
+    final RunNode newNode = acquireNode();
+    newNode.runnable = Objects.requireNonNull(command, "Runnable must not be null");
     final RunNode prevLast = last.getAndSet(newNode);
     if (prevLast != null)
       prevLast.lazySet(newNode);
-    else
-      delegate.execute(() -> runAll(newNode));
+    else {
+      head = newNode;
+      delegate.execute(runner);
+    }
+  }
+
+  /**
+   * Whether the current thread is the one running operations for this executor, that is, whether the caller is
+   * currently inside an operation submitted to this executor.
+   */
+  final boolean isRunningOnCurrentThread() {
+    return runningThread == Thread.currentThread();
   }
 
   protected void reportFailure(final Thread runner, final Runnable thrower, final Throwable thrown) {
@@ -53,29 +104,138 @@ final class MutexExecutor implements Executor {
     }
   }
 
+  /**
+   * Run a single operation. Invoked with mutual exclusion from all other operations submitted to this executor.
+   */
+  protected void runTask(final Runnable task) {
+    task.run();
+  }
+
   // Runs a single RunNode and deals with any Throwables it throws
   private final void run(final RunNode current) {
-    try { current.runnable.run(); } catch (final Throwable thrown) {
+    try { runTask(current.runnable); } catch (final Throwable thrown) {
       reportFailure(Thread.currentThread(), current.runnable, thrown);
     }
   }
 
-  // Runs all the RunNodes starting with `next`
-  private final void runAll(RunNode next) {
-    for(;;) {
+  // Runs the RunNodes starting with head, until the queue is empty or throughput is reached
+  private final void runAll() {
+    final Resubmission resubmission = RESUBMISSION.get();
+    if (resubmission.executor == this) { // run synchronously by the delegate from our own resubmission
+      resubmission.ranInline = true; // so let the resubmitting runner carry on, rather than recursing
+      return;
+    }
+    RunNode next = head;
+    head = null;
+    final Thread thread = Thread.currentThread();
+    runningThread = thread;
+    for (int remaining = throughput;;) {
       final RunNode current = next;
       run(current);
       if ((next = current.get()) == null) { // try advance, if we get null test
-        if (last.compareAndSet(current, null)) return; // end-of-queue: we're done.
-        else while((next = current.get()) == null)/* Thread.onSpinWait() */; // try advance until next is visible.
+        runningThread = null; // must be cleared before another runner could start
+        if (last.compareAndSet(current, null)) { // end-of-queue: we're done.
+          releaseNode(current);
+          return;
+        }
+        else {
+          runningThread = thread;
+          next = awaitNext(current); // try advance until next is visible.
+        }
+      }
+      // No submitter references current anymore, so it can be recycled
+      releaseNode(current);
+      if (--remaining == 0) { // throughput reached, resubmit ourselves to give others a turn
+        head = next;
+        runningThread = null;
+        if (!resubmit(resubmission)) return;
+        next = head; // the delegate ran us inline, so carry on from where we were
+        head = null;
+        runningThread = thread;
+        remaining = throughput;
       }
     }
   }
 
-  private static class RunNode extends AtomicReference<RunNode> {
-    final Runnable runnable;
-    RunNode(final Runnable runnable) {
-      this.runnable = runnable;
+  // Resubmits the runner to the delegate, returning whether the delegate ran it synchronously
+  private boolean resubmit(final Resubmission resubmission) {
+    final MutexExecutor prevExecutor = resubmission.executor;
+    final boolean prevRanInline = resubmission.ranInline;
+    resubmission.executor = this;
+    resubmission.ranInline = false;
+    try {
+      delegate.execute(runner);
+      return resubmission.ranInline;
+    } finally {
+      resubmission.executor = prevExecutor;
+      resubmission.ranInline = prevRanInline;
     }
   }
-}
\ No newline at end of file
+
+  // Spins, then yields, until the submitter that swapped itself in after current has linked itself
+  private static RunNode awaitNext(final RunNode current) {
+    RunNode next;
+    int spins = 0;
+    while ((next = current.get()) == null) {
+      if (spins < SPINS_BEFORE_YIELD) {
+        spins++;
+        onSpinWait();
+      } else Thread.yield();
+    }
+    return next;
+  }
+
+  // Per thread state of a runner resubmitting itself to its delegate
+  private static final class Resubmission {
+    MutexExecutor executor;
+    boolean ranInline;
+  }
+
+  private RunNode acquireNode() {
+    for (int i = 0; i < SPARE_NODES; i++) {
+      if (spareNodes.get(i) != null) {
+        final RunNode node = spareNodes.getAndSet(i, null);
+        if (node != null) return node;
+      }
+    }
+    return new RunNode();
+  }
+
+  private void releaseNode(final RunNode node) {
+    node.runnable = null;
+    node.set(null);
+    for (int i = 0; i < SPARE_NODES; i++) {
+      if (spareNodes.get(i) == null && spareNodes.compareAndSet(i, null, node)) return;
+    }
+  }
+
+  private static void onSpinWait() {
+    try {
+      ON_SPIN_WAIT.invokeExact();
+    } catch (Throwable t) {
+      // Can't happen, neither Thread.onSpinWait nor our no-op throws
+    }
+  }
+
+  // Thread.onSpinWait is only available from JDK 9, on older JDKs we don't give a hint
+  private static MethodHandle onSpinWaitHandle() {
+    final MethodType type = MethodType.methodType(void.class);
+    try {
+      return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", type);
+    } catch (ReflectiveOperationException e) {
+      try {
+        return MethodHandles.lookup().findStatic(MutexExecutor.class, "noSpinWaitHint", type);
+      } catch (ReflectiveOperationException e2) {
+        throw new ExceptionInInitializerError(e2);
+      }
+    }
+  }
+
+  private static void noSpinWaitHint() {
+  }
+
+  private static class RunNode extends AtomicReference<RunNode> {
+    // Written by the submitter before the node is published, read by the runner after it has been published
+    Runnable runnable;
+  }
+}
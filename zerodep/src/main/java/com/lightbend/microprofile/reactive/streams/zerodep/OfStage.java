@@ -12,26 +12,46 @@
 package com.lightbend.microprofile.reactive.streams.zerodep;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Of stage.
+ *
+ * If the elements are a random access list, they are walked by index, so the stage knows when it has pushed the last
+ * element without probing an iterator.
  */
 class OfStage<T> extends GraphStage implements OutletListener {
   private final StageOutlet<T> outlet;
-  private Iterator<T> elements;
+  private final Iterator<T> elements;
+  private final List<T> list;
+  private final int size;
+  private int index;
 
   public OfStage(BuiltGraph builtGraph, StageOutlet<T> outlet, Iterable<T> elements) {
     super(builtGraph);
     this.outlet = outlet;
-    this.elements = elements.iterator();
+    if (elements instanceof List && elements instanceof RandomAccess) {
+      this.list = (List<T>) elements;
+      this.size = list.size();
+      this.elements = null;
+    } else {
+      this.list = null;
+      this.size = 0;
+      this.elements = elements.iterator();
+    }
 
     outlet.setListener(this);
   }
 
+  private boolean hasNext() {
+    return list != null ? index < size : elements.hasNext();
+  }
+
   @Override
   protected void postStart() {
     if (!outlet.isClosed()) {
-      if (!elements.hasNext()) {
+      if (!hasNext()) {
         outlet.complete();
       }
     }
@@ -39,8 +59,8 @@ class OfStage<T> extends GraphStage implements OutletListener {
 
   @Override
   public void onPull() {
-    outlet.push(elements.next());
-    if (!elements.hasNext() && !outlet.isClosed()) {
+    outlet.push(list != null ? list.get(index++) : elements.next());
+    if (!hasNext() && !outlet.isClosed()) {
       outlet.complete();
     }
   }
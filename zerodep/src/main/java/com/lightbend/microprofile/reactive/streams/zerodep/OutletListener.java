@@ -0,0 +1,28 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+/**
+ * A listener to receive signals from an outlet.
+ */
+public interface OutletListener {
+  /**
+   * A pull signal, indicates that downstream is ready to be pushed to.
+   */
+  void onPull();
+
+  /**
+   * A completion signal, indicates that downstream has completed. No further signals may be sent to this outlet after
+   * this signal is received.
+   */
+  void onDownstreamFinish();
+}
@@ -0,0 +1,389 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A run of primitive stages.
+ * <p>
+ * Runs of consecutive {@link ZeroDepStage} primitive stages of the same type are collapsed by the builder into a single
+ * primitive stage, which holds the value as a primitive while applying each of the operations to it. This means values
+ * are only boxed if they leave the run, and a run that ends in a primitive collect stage doesn't allocate anything per
+ * element at all.
+ * <p>
+ * This class handles the signals of the run, applies the operations and drives the accumulation, subclasses hold the
+ * value and the accumulator as their type of primitive, and supply the functions that work on them.
+ */
+abstract class PrimitiveStage<T> extends GraphStage implements InletListener, OutletListener {
+
+  private final StageInlet<T> inlet;
+  /**
+   * The outlet, or null if the run ends in a primitive collect stage.
+   */
+  private final StageOutlet<Object> outlet;
+  /**
+   * The result, if the run ends in a primitive collect stage.
+   */
+  private final CompletableFuture<Object> result;
+  private final Operation[] operations;
+  /**
+   * How values are accumulated, if the run ends in a primitive collect stage.
+   */
+  private final ZeroDepStage.Accumulation accumulation;
+  private long count;
+
+  PrimitiveStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<Object> outlet,
+      CompletableFuture<Object> result, Run run) {
+    super(builtGraph);
+    this.inlet = inlet;
+    this.outlet = outlet;
+    this.result = result;
+
+    List<Stage> stages = run.getOperations();
+    operations = new Operation[stages.size()];
+    for (int i = 0; i < operations.length; i++) {
+      operations[i] = createOperation(stages.get(i));
+    }
+    if (run.getExit() instanceof ZeroDepStage.PrimitiveCollect) {
+      accumulation = ((ZeroDepStage.PrimitiveCollect) run.getExit()).getAccumulation();
+    } else {
+      accumulation = null;
+    }
+
+    inlet.setListener(this);
+    if (outlet != null) {
+      outlet.setListener(this);
+    }
+  }
+
+  /**
+   * Create the stage for the given run.
+   */
+  static PrimitiveStage<?> create(BuiltGraph builtGraph, StageInlet<?> inlet, StageOutlet<Object> outlet,
+      CompletableFuture<Object> result, Run run) {
+    switch (run.getType()) {
+      case INT:
+        return new IntStage<>(builtGraph, inlet, outlet, result, run);
+      case LONG:
+        return new LongStage<>(builtGraph, inlet, outlet, result, run);
+      default:
+        return new DoubleStage<>(builtGraph, inlet, outlet, result, run);
+    }
+  }
+
+  /**
+   * Create the operation for the given map or filter stage.
+   * <p>
+   * This is invoked while this stage is being constructed, so the fields of the subclass may only be used from within
+   * the returned operation.
+   */
+  abstract Operation createOperation(Stage stage);
+
+  /**
+   * Take the given element into the run as the current value.
+   */
+  abstract void enter(T element);
+
+  /**
+   * Map the current value to the element that leaves the run.
+   */
+  abstract Object exit();
+
+  /**
+   * Start the accumulator with the current value.
+   */
+  abstract void accumulateFirst();
+
+  /**
+   * Add the current value to the accumulator.
+   */
+  abstract void accumulateSum();
+
+  /**
+   * Keep the lesser of the accumulator and the current value.
+   */
+  abstract void accumulateMin();
+
+  /**
+   * Keep the greater of the accumulator and the current value.
+   */
+  abstract void accumulateMax();
+
+  /**
+   * The accumulator, boxed.
+   */
+  abstract Object boxedAccumulator();
+
+  /**
+   * The accumulator, as an optional of this type of primitive.
+   */
+  abstract Object optionalAccumulator();
+
+  /**
+   * An empty optional of this type of primitive.
+   */
+  abstract Object emptyOptional();
+
+  /**
+   * Take the given element into the run, and apply each of the operations to it.
+   *
+   * @return Whether the value has been kept.
+   */
+  private boolean apply(T element) {
+    enter(element);
+    for (Operation operation : operations) {
+      if (!operation.apply()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void accumulate() {
+    switch (accumulation) {
+      case SUM:
+        accumulateSum();
+        break;
+      case MIN:
+        if (count == 0) {
+          accumulateFirst();
+        } else {
+          accumulateMin();
+        }
+        break;
+      case MAX:
+        if (count == 0) {
+          accumulateFirst();
+        } else {
+          accumulateMax();
+        }
+        break;
+      default:
+        break;
+    }
+    count++;
+  }
+
+  /**
+   * The result of the accumulation, once upstream has finished.
+   */
+  private Object accumulated() {
+    switch (accumulation) {
+      case SUM:
+        return boxedAccumulator();
+      case COUNT:
+        return count;
+      default:
+        return count == 0 ? emptyOptional() : optionalAccumulator();
+    }
+  }
+
+  @Override
+  protected void postStart() {
+    // If we're the last stage, we need to pull, unless an earlier stage finished immediately
+    if (outlet == null && !inlet.isClosed()) {
+      inlet.pull();
+    }
+  }
+
+  @Override
+  public void onPush() {
+    boolean kept = apply(inlet.grab());
+    if (outlet == null) {
+      if (kept) {
+        accumulate();
+      }
+      inlet.pull();
+    } else if (kept) {
+      outlet.push(exit());
+    } else {
+      inlet.pull();
+    }
+  }
+
+  @Override
+  public void onUpstreamFinish() {
+    if (outlet == null) {
+      result.complete(accumulated());
+    } else {
+      outlet.complete();
+    }
+  }
+
+  @Override
+  public void onUpstreamFailure(Throwable error) {
+    if (outlet == null) {
+      result.completeExceptionally(error);
+    } else {
+      outlet.fail(error);
+    }
+  }
+
+  @Override
+  public void onPull() {
+    inlet.pull();
+  }
+
+  @Override
+  public void onDownstreamFinish() {
+    inlet.cancel();
+  }
+
+  /**
+   * The types of primitive that runs can hold.
+   */
+  enum Type {
+    INT, LONG, DOUBLE
+  }
+
+  /**
+   * The type of primitive that the given stage operates on, or null if it isn't a primitive stage.
+   */
+  static Type typeOf(Stage stage) {
+    if (stage instanceof ZeroDepStage.MapToInt || stage instanceof ZeroDepStage.IntMap ||
+        stage instanceof ZeroDepStage.IntFilter || stage instanceof ZeroDepStage.IntMapToObject ||
+        stage instanceof ZeroDepStage.IntCollect) {
+      return Type.INT;
+    } else if (stage instanceof ZeroDepStage.MapToLong || stage instanceof ZeroDepStage.LongMap ||
+        stage instanceof ZeroDepStage.LongFilter || stage instanceof ZeroDepStage.LongMapToObject ||
+        stage instanceof ZeroDepStage.LongCollect) {
+      return Type.LONG;
+    } else if (stage instanceof ZeroDepStage.MapToDouble || stage instanceof ZeroDepStage.DoubleMap ||
+        stage instanceof ZeroDepStage.DoubleFilter || stage instanceof ZeroDepStage.DoubleMapToObject ||
+        stage instanceof ZeroDepStage.DoubleCollect) {
+      return Type.DOUBLE;
+    } else {
+      return null;
+    }
+  }
+
+  private static boolean startsRun(Stage stage) {
+    return stage instanceof ZeroDepStage.MapToInt || stage instanceof ZeroDepStage.MapToLong ||
+        stage instanceof ZeroDepStage.MapToDouble;
+  }
+
+  private static boolean endsRun(Stage stage) {
+    return stage instanceof ZeroDepStage.IntMapToObject || stage instanceof ZeroDepStage.LongMapToObject ||
+        stage instanceof ZeroDepStage.DoubleMapToObject || stage instanceof ZeroDepStage.PrimitiveCollect;
+  }
+
+  /**
+   * Collapse each run of consecutive primitive stages in the given stages into a single {@link Run} stage.
+   * <p>
+   * A run starts at any primitive stage, and ends after a map to object or primitive collect stage, or before the first
+   * stage that isn't a primitive stage of the same type. A map to primitive stage always starts a new run.
+   */
+  static Collection<Stage> collapse(Collection<Stage> stages) {
+    List<Stage> collapsed = new ArrayList<>(stages.size());
+    List<Stage> run = new ArrayList<>();
+    Type runType = null;
+    for (Stage stage : stages) {
+      Type type = typeOf(stage);
+      if (type != null) {
+        if (type != runType || startsRun(stage)) {
+          flushRun(run, runType, collapsed);
+        }
+        run.add(stage);
+        runType = type;
+        if (endsRun(stage)) {
+          flushRun(run, runType, collapsed);
+          runType = null;
+        }
+      } else {
+        flushRun(run, runType, collapsed);
+        runType = null;
+        collapsed.add(stage);
+      }
+    }
+    flushRun(run, runType, collapsed);
+    return collapsed;
+  }
+
+  private static void flushRun(List<Stage> run, Type type, List<Stage> collapsed) {
+    if (!run.isEmpty()) {
+      collapsed.add(new Run(type, new ArrayList<>(run)));
+      run.clear();
+    }
+  }
+
+  /**
+   * The graph stage that a run of primitive stages gets replaced with when the graph is built.
+   */
+  static final class Run implements Stage {
+    private final Type type;
+    private final List<Stage> stages;
+
+    private Run(Type type, List<Stage> stages) {
+      this.type = type;
+      this.stages = stages;
+    }
+
+    Type getType() {
+      return type;
+    }
+
+    /**
+     * The map to primitive stage that starts the run, or null if the run takes boxed values.
+     */
+    Stage getEntry() {
+      return startsRun(stages.get(0)) ? stages.get(0) : null;
+    }
+
+    /**
+     * The map and filter stages of the run.
+     */
+    List<Stage> getOperations() {
+      return stages.subList(getEntry() == null ? 0 : 1, getExit() == null ? stages.size() : stages.size() - 1);
+    }
+
+    /**
+     * The map to object or primitive collect stage that ends the run, or null if the run emits boxed values.
+     */
+    Stage getExit() {
+      Stage last = stages.get(stages.size() - 1);
+      return endsRun(last) ? last : null;
+    }
+
+    @Override
+    public boolean hasInlet() {
+      return true;
+    }
+
+    @Override
+    public boolean hasOutlet() {
+      return !(getExit() instanceof ZeroDepStage.PrimitiveCollect);
+    }
+
+    @Override
+    public String toString() {
+      return type + "Run" + stages;
+    }
+  }
+
+  /**
+   * An operation applied to the current value of a run.
+   */
+  interface Operation {
+    /**
+     * Apply the operation to the current value.
+     *
+     * @return Whether the value has been kept.
+     */
+    boolean apply();
+  }
+}
@@ -22,20 +22,36 @@ import java.util.Objects;
  *
  * This is either the last outlet for a graph that has an outlet, or is used to connect a Processor or Publisher stage
  * in a graph.
+ *
+ * While there is outstanding demand, when an element is pushed synchronously from a pull, the outlet keeps pulling and
+ * emitting in a loop, up to the configured batch size. Once the batch is used up, or when an element is pushed outside
+ * of a pull, the next pull is enqueued as an unrolled signal, so that other signals get a chance to run. A push never
+ * invokes the listener itself, so a stage is never pulled from within its own push.
  */
 final class PublisherOutlet<T> implements StageOutlet<T>, Publisher<T>, Subscription, Port, UnrolledSignal {
 
   private final BuiltGraph builtGraph;
+  private final int batchSize;
 
   private Subscriber<? super T> subscriber;
   private boolean pulled;
+  /**
+   * Whether we are currently in the drain loop, in which case a push doesn't need to initiate the next pull.
+   */
+  private boolean draining;
+  /**
+   * The number of pulls that may still be done directly before we need to yield.
+   */
+  private int batchRemaining;
   private long demand;
   private boolean finished;
   private Throwable failure;
   private OutletListener listener;
 
-  PublisherOutlet(BuiltGraph builtGraph) {
+  PublisherOutlet(BuiltGraph builtGraph, int batchSize) {
     this.builtGraph = builtGraph;
+    this.batchSize = batchSize;
+    this.batchRemaining = batchSize;
   }
 
   @Override
@@ -108,7 +124,7 @@ final class PublisherOutlet<T> implements StageOutlet<T>, Publisher<T>, Subscrip
             demand = Long.MAX_VALUE;
           }
           if (!existingDemand) {
-            doPull();
+            drain();
           }
         }
       }
@@ -118,7 +134,26 @@ final class PublisherOutlet<T> implements StageOutlet<T>, Publisher<T>, Subscrip
   @Override
   public void signal() {
     if (!finished && !pulled) {
+      drain();
+    }
+  }
+
+  /**
+   * Pull, and keep pulling while elements are pushed synchronously, there is demand, and the batch isn't used up.
+   */
+  private void drain() {
+    draining = true;
+    try {
       doPull();
+      while (!pulled && !finished && demand > 0 && batchRemaining > 0) {
+        batchRemaining--;
+        doPull();
+      }
+    } finally {
+      draining = false;
+    }
+    if (!pulled && !finished && demand > 0) {
+      yieldPull();
     }
   }
 
@@ -127,6 +162,11 @@ final class PublisherOutlet<T> implements StageOutlet<T>, Publisher<T>, Subscrip
     listener.onPull();
   }
 
+  private void yieldPull() {
+    batchRemaining = batchSize;
+    builtGraph.enqueueSignal(this);
+  }
+
   @Override
   public void cancel() {
     builtGraph.execute(() -> {
@@ -152,8 +192,9 @@ final class PublisherOutlet<T> implements StageOutlet<T>, Publisher<T>, Subscrip
       demand -= 1;
     }
     subscriber.onNext(element);
-    if (demand > 0) {
-      builtGraph.enqueueSignal(this);
+    // If we're draining, the drain loop will do the next pull
+    if (demand > 0 && !finished && !draining) {
+      yieldPull();
     }
   }
 
@@ -18,30 +18,127 @@ import org.eclipse.microprofile.reactive.streams.spi.UnsupportedStageException;
 import org.reactivestreams.Processor;
 import org.reactivestreams.Publisher;
 
+import java.util.Objects;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implementation of the reactive streams engine.
+ * <p>
+ * Graphs built by this engine run on the executor that the engine was created with. Each graph only ever submits one
+ * task at a time to the executor, so any executor may be used, including a dedicated {@link ForkJoinPool}, a fixed
+ * thread pool, or a thread per task executor. When created by the service loader, the JDK common pool is used, unless
+ * the {@value #VIRTUAL_THREADS_PROPERTY} system property is set to {@code true}, in which case graphs run on virtual
+ * threads.
+ * <p>
+ * Publishers and processors built by this engine aren't built until they're first used. If one is used as a stage of
+ * another graph built by this engine before then, its stages are built directly into that graph, rather than it being
+ * connected to that graph through a subscriber and publisher.
  */
 public class ReactiveStreamsEngineImpl implements ReactiveStreamsEngine {
+
+  /**
+   * System property that, when set to {@code true}, causes engines created by the service loader to run graphs on
+   * virtual threads.
+   */
+  public static final String VIRTUAL_THREADS_PROPERTY =
+      "com.lightbend.microprofile.reactive.streams.zerodep.virtualThreads";
+
+  private final Executor executor;
+  private final EngineSettings settings;
+
+  /**
+   * Create an engine that runs graphs on the JDK common pool, or on virtual threads if the
+   * {@value #VIRTUAL_THREADS_PROPERTY} system property is set to {@code true}.
+   */
+  public ReactiveStreamsEngineImpl() {
+    this(Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) ? VirtualThreadExecutor.create() : ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Create an engine that runs graphs on the given executor.
+   *
+   * @param executor The executor to run graphs on.
+   */
+  public ReactiveStreamsEngineImpl(Executor executor) {
+    this(executor, EngineSettings.defaults());
+  }
+
+  /**
+   * Create an engine that runs graphs on the given executor, using the given settings.
+   *
+   * @param executor The executor to run graphs on.
+   * @param settings The settings for graphs built by this engine.
+   */
+  public ReactiveStreamsEngineImpl(Executor executor, EngineSettings settings) {
+    this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+    this.settings = Objects.requireNonNull(settings, "Settings must not be null");
+  }
+
+  /**
+   * Get an engine that runs graphs on the same executor as this engine, but with the given settings.
+   * <p>
+   * This can be used to configure individual graphs, by running them with the returned engine.
+   *
+   * @param settings The settings to use.
+   * @return The engine.
+   */
+  public ReactiveStreamsEngineImpl withSettings(EngineSettings settings) {
+    return new ReactiveStreamsEngineImpl(executor, settings);
+  }
+
+  /**
+   * The settings used by this engine.
+   */
+  public EngineSettings getSettings() {
+    return settings;
+  }
+
+  /**
+   * Create an engine that runs each graph on virtual threads.
+   * <p>
+   * Each burst of signals for a graph is handled on a new virtual thread, so user functions that block, for example
+   * a map stage that does blocking IO, park the virtual thread rather than holding up a thread from a shared pool.
+   * Signals for a graph are still run serially.
+   *
+   * @throws UnsupportedOperationException If the running JDK does not support virtual threads.
+   */
+  public static ReactiveStreamsEngineImpl withVirtualThreads() {
+    return new ReactiveStreamsEngineImpl(VirtualThreadExecutor.create());
+  }
+
+  /**
+   * Compile a graph into a blueprint.
+   * <p>
+   * The blueprint can be built any number of times, without the cost of working out how to build the graph each time.
+   * Blueprints are built on the executor, and with the settings, of this engine.
+   *
+   * @param graph The graph to compile.
+   * @return The blueprint.
+   * @throws UnsupportedStageException If the graph contains a stage that this engine does not support.
+   */
+  public GraphBlueprint compile(Graph graph) throws UnsupportedStageException {
+    return new GraphBlueprint(executor, settings, BuiltGraph.compile(graph, false, settings));
+  }
+
   @Override
   public <T> Publisher<T> buildPublisher(Graph graph) throws UnsupportedStageException {
-    return BuiltGraph.buildPublisher(ForkJoinPool.commonPool(), graph);
+    return BuiltGraph.buildPublisher(executor, settings, graph);
   }
 
   @Override
   public <T, R> SubscriberWithResult<T, R> buildSubscriber(Graph graph) throws UnsupportedStageException {
-    return BuiltGraph.buildSubscriber(ForkJoinPool.commonPool(), graph);
+    return BuiltGraph.buildSubscriber(executor, settings, graph);
   }
 
   @Override
   public <T, R> Processor<T, R> buildProcessor(Graph graph) throws UnsupportedStageException {
-    return BuiltGraph.buildProcessor(ForkJoinPool.commonPool(), graph);
+    return BuiltGraph.buildProcessor(executor, settings, graph);
   }
 
   @Override
   public <T> CompletionStage<T> buildCompletion(Graph graph) throws UnsupportedStageException {
-    return BuiltGraph.buildCompletion(ForkJoinPool.commonPool(), graph);
+    return BuiltGraph.buildCompletion(executor, settings, graph);
   }
 }
@@ -0,0 +1,134 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A registry of the stages or ports of a graph.
+ * <p>
+ * Stages and ports are registered in groups, one group for each builder that adds to the graph. Sub streams are built
+ * by their own builder, and are torn down when they complete, so that long running streams with many sub streams don't
+ * leak memory. To make that cheap, the groups are held in an intrusive doubly linked list, so registering or removing a
+ * group is constant time, no matter how many stages or ports the graph has, and involves no hashing.
+ * <p>
+ * Iteration is in registration order. A group that is removed while it's being iterated over keeps its link to the
+ * group that followed it, so removing groups, for example when a port shuts down a sub stream during iteration, never
+ * breaks an iteration in progress. Groups that are removed before the iteration reaches them are skipped.
+ * <p>
+ * Not thread safe, like everything else in the graph, it must only be accessed from within the graph's executor.
+ */
+final class Registry<T> implements Iterable<T> {
+
+  private Group<T> head;
+  private Group<T> tail;
+
+  /**
+   * Register a group of elements.
+   *
+   * @param elements The elements. The list is held by the group, not copied.
+   * @return The group, which can be used to remove the elements.
+   */
+  Group<T> register(List<T> elements) {
+    Group<T> group = new Group<>(this, elements);
+    if (tail == null) {
+      head = group;
+    } else {
+      tail.next = group;
+      group.prev = tail;
+    }
+    tail = group;
+    return group;
+  }
+
+  /**
+   * Remove all groups.
+   */
+  void clear() {
+    for (Group<T> group = head; group != null; group = group.next) {
+      group.removed = true;
+    }
+    head = null;
+    tail = null;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private Group<T> group = head;
+      private Iterator<T> elements = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!elements.hasNext()) {
+          if (group == null) {
+            return false;
+          }
+          if (!group.removed) {
+            elements = group.elements.iterator();
+          }
+          group = group.next;
+        }
+        return true;
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return elements.next();
+      }
+    };
+  }
+
+  /**
+   * A group of registered elements.
+   */
+  static final class Group<T> {
+    private final Registry<T> registry;
+    private final List<T> elements;
+    private Group<T> prev;
+    private Group<T> next;
+    private boolean removed;
+
+    private Group(Registry<T> registry, List<T> elements) {
+      this.registry = registry;
+      this.elements = elements;
+    }
+
+    /**
+     * Remove this group from the registry. Removing a group more than once has no effect.
+     */
+    void remove() {
+      if (removed) {
+        return;
+      }
+      removed = true;
+      if (prev == null) {
+        registry.head = next;
+      } else {
+        prev.next = next;
+      }
+      if (next == null) {
+        registry.tail = prev;
+      } else {
+        next.prev = prev;
+      }
+      // next is left as is, so that an iteration that is currently on this group can continue
+      prev = null;
+    }
+  }
+}
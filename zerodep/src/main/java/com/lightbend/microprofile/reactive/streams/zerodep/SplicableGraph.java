@@ -0,0 +1,116 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A publisher or processor graph built by this engine, that is only built when it's first used.
+ * <p>
+ * Until it's used, the graph can instead be spliced into another graph that it's a stage of. Rather than the two graphs
+ * being connected through a publisher and subscriber, each with their own buffer and executor, the stages of the
+ * spliced graph are built directly into the enclosing graph, joined to its other stages by plain ports. Once a graph
+ * has been built, it can't be spliced, and once it has been spliced, it can't be used on its own.
+ */
+abstract class SplicableGraph<G> {
+
+  private final Executor executor;
+  private final EngineSettings settings;
+  private final BuiltGraph.Plan plan;
+
+  private volatile G built;
+  private boolean spliced;
+
+  SplicableGraph(Executor executor, EngineSettings settings, BuiltGraph.Plan plan) {
+    this.executor = executor;
+    this.settings = settings;
+    this.plan = plan;
+  }
+
+  /**
+   * Build the graph on its own.
+   */
+  protected abstract G build(Executor executor, EngineSettings settings, BuiltGraph.Plan plan);
+
+  /**
+   * What to use in place of the graph if it's used after it has been spliced into another graph.
+   */
+  protected abstract G alreadySpliced();
+
+  /**
+   * Get the built graph, building it if it hasn't been built yet.
+   */
+  protected final G built() {
+    G graph = built;
+    if (graph == null) {
+      synchronized (this) {
+        if (built == null) {
+          built = spliced ? alreadySpliced() : build(executor, settings, plan);
+        }
+        graph = built;
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Claim the plan of this graph, to splice it into another graph.
+   *
+   * @return The plan, or null if the graph has already been built or spliced, or its plan can't be spliced.
+   */
+  final synchronized BuiltGraph.Plan splice() {
+    if (built == null && !spliced && plan.isSplicable()) {
+      spliced = true;
+      return plan;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * The stage that a publisher or processor stage whose publisher or processor is a splicable graph gets replaced with
+   * when the enclosing graph is compiled.
+   * <p>
+   * Rather than being a publisher or subscriber, it's a stage with an outlet, and an inlet if it's a processor, so the
+   * enclosing graph connects it to its neighbours with plain ports.
+   */
+  static final class Splice implements Stage {
+    private final SplicableGraph<?> graph;
+    private final boolean processor;
+
+    Splice(SplicableGraph<?> graph, boolean processor) {
+      this.graph = graph;
+      this.processor = processor;
+    }
+
+    SplicableGraph<?> getGraph() {
+      return graph;
+    }
+
+    @Override
+    public boolean hasInlet() {
+      return processor;
+    }
+
+    @Override
+    public boolean hasOutlet() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "Splice(" + graph + ")";
+    }
+  }
+}
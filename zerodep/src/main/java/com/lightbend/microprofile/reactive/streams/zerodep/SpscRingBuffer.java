@@ -0,0 +1,79 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, single producer single consumer ring buffer.
+ *
+ * Whether a slot is free or full is indicated by whether it holds null, so the producer and the consumer never need to
+ * read each other's index. The slots are the only thing shared between the producer and the consumer, the indexes are
+ * each only accessed by one side.
+ *
+ * The producer calls must be serialized with each other, as must the consumer calls, but they may each be made from
+ * different threads over time, as long as there is a happens before relationship between successive calls on the same
+ * side. This is the case for Reactive Streams signals, and for signals run on a graph.
+ */
+final class SpscRingBuffer<E> {
+  private final AtomicReferenceArray<E> buffer;
+  private final int mask;
+  private long producerIndex;
+  private long consumerIndex;
+
+  /**
+   * Create a ring buffer.
+   *
+   * @param capacity The minimum capacity, the actual capacity will be this rounded up to the next power of two.
+   */
+  SpscRingBuffer(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least one");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new AtomicReferenceArray<>(size);
+    mask = size - 1;
+  }
+
+  /**
+   * Offer an element, invoked by the producer.
+   *
+   * @return false if the buffer is full.
+   */
+  boolean offer(E element) {
+    int index = (int) producerIndex & mask;
+    if (buffer.get(index) != null) {
+      return false;
+    }
+    buffer.lazySet(index, element);
+    producerIndex++;
+    return true;
+  }
+
+  /**
+   * Poll an element, invoked by the consumer.
+   *
+   * @return The element, or null if the buffer is empty.
+   */
+  E poll() {
+    int index = (int) consumerIndex & mask;
+    E element = buffer.get(index);
+    if (element != null) {
+      buffer.lazySet(index, null);
+      consumerIndex++;
+    }
+    return element;
+  }
+}
@@ -0,0 +1,74 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The context that a custom graph stage is created in, by a {@link GraphStageFactory}.
+ * <p>
+ * This provides the ports that the stage is connected to the rest of the graph by.
+ */
+public final class StageContext {
+
+  private final BuiltGraph builtGraph;
+  private final StageInlet<?> inlet;
+  private final StageOutlet<?> outlet;
+  private final CompletableFuture<?> result;
+
+  StageContext(BuiltGraph builtGraph, StageInlet<?> inlet, StageOutlet<?> outlet, CompletableFuture<?> result) {
+    this.builtGraph = builtGraph;
+    this.inlet = inlet;
+    this.outlet = outlet;
+    this.result = result;
+  }
+
+  BuiltGraph builtGraph() {
+    return builtGraph;
+  }
+
+  /**
+   * The inlet that the stage receives elements from.
+   *
+   * @throws IllegalStateException If the stage has no inlet.
+   */
+  public <T> StageInlet<T> inlet() {
+    if (inlet == null) {
+      throw new IllegalStateException("Stage has no inlet");
+    }
+    return (StageInlet<T>) inlet;
+  }
+
+  /**
+   * The outlet that the stage emits elements to.
+   *
+   * @throws IllegalStateException If the stage has no outlet.
+   */
+  public <T> StageOutlet<T> outlet() {
+    if (outlet == null) {
+      throw new IllegalStateException("Stage has no outlet");
+    }
+    return (StageOutlet<T>) outlet;
+  }
+
+  /**
+   * The result of the graph, which the stage must complete when it finishes, if it has no outlet.
+   *
+   * @throws IllegalStateException If the stage has an outlet.
+   */
+  public <T> CompletableFuture<T> result() {
+    if (result == null) {
+      throw new IllegalStateException("Only stages without an outlet complete the result of the graph");
+    }
+    return (CompletableFuture<T>) result;
+  }
+}
@@ -16,7 +16,7 @@ package com.lightbend.microprofile.reactive.streams.zerodep;
  *
  * @param <T> The type of signal this stage deals with.
  */
-interface StageInlet<T> {
+public interface StageInlet<T> {
 
   /**
    * Send a pull signal to this inlet. This will allow an upstream stage to push an element.
@@ -64,25 +64,3 @@ interface StageInlet<T> {
    */
   void setListener(InletListener listener);
 }
-
-/**
- * A listener for signals to an inlet.
- */
-interface InletListener {
-
-  /**
-   * Indicates that an element has been pushed. The element can be received using {@link StageInlet#grab()}.
-   */
-  void onPush();
-
-  /**
-   * Indicates that upstream has completed the stream. No signals may be sent to the inlet after this has been invoked.
-   */
-  void onUpstreamFinish();
-
-  /**
-   * Indicates that upstream has completed the stream with a failure. No signals may be sent to the inlet after this has
-   * been invoked.
-   */
-  void onUpstreamFailure(Throwable error);
-}
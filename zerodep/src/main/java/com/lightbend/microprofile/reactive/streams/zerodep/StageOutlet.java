@@ -16,7 +16,7 @@ package com.lightbend.microprofile.reactive.streams.zerodep;
  *
  * @param <T> The type of elements that this outlet supports.
  */
-interface StageOutlet<T> {
+public interface StageOutlet<T> {
 
   /**
    * Push an element.
@@ -58,19 +58,3 @@ interface StageOutlet<T> {
    */
   void setListener(OutletListener listener);
 }
-
-/**
- * An listener to receive signals from an outlet.
- */
-interface OutletListener {
-  /**
-   * A pull signal, indicates that downstream is ready to be pushed to.
-   */
-  void onPull();
-
-  /**
-   * A completion signal, indicates that downstream has completed. No further signals may be sent to this outlet after
-   * this signal is received.
-   */
-  void onDownstreamFinish();
-}
@@ -17,17 +17,36 @@ import org.reactivestreams.Subscription;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An inlet that is a subscriber.
  *
  * This is either the first inlet for a graph that has an inlet, or is used to connect a Processor or Subscriber stage
  * in a graph.
+ *
+ * Elements are requested from upstream in batches, according to the buffer watermarks. If the buffer is adaptive, the
+ * watermarks are doubled when the inlet is pulled while its buffer is empty, and halved when elements are left sitting
+ * in the buffer, whenever the inlet is about to request more elements.
+ *
+ * If the ingress queue is enabled, onNext doesn't submit a task to the graph for each element. Instead, elements are
+ * offered to a ring buffer that is large enough to hold the maximum demand the inlet will ever have outstanding, and
+ * a drain task is only submitted when the ring buffer goes from having nothing to drain to having something to drain.
  */
 final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, UnrolledSignal {
   private final BuiltGraph builtGraph;
-  private final int bufferHighWatermark;
-  private final int bufferLowWatermark;
+  private final EngineSettings settings;
+  private final boolean adaptiveBuffer;
+  private int bufferHighWatermark;
+  private int bufferLowWatermark;
+  /**
+   * Whether the inlet has been pulled while its buffer was empty since the watermarks were last adapted.
+   */
+  private boolean starved;
+  /**
+   * Whether elements have been left in the buffer after an element was grabbed since the watermarks were last adapted.
+   */
+  private boolean backedUp;
 
   private final Deque<T> elements = new ArrayDeque<>();
   private T elementToPush;
@@ -39,10 +58,37 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
   private Throwable error;
   private boolean pulled;
 
-  SubscriberInlet(BuiltGraph builtGraph, int bufferHighWatermark, int bufferLowWatermark) {
+  /**
+   * The ingress queue, null if the ingress queue isn't enabled.
+   */
+  private final SpscRingBuffer<T> ingress;
+  /**
+   * The number of times onNext has signalled that there are elements to drain since the last drain finished. A drain
+   * task is only submitted when this goes from zero to one.
+   */
+  private final AtomicInteger ingressSignals;
+  private final Runnable drainIngress;
+  /**
+   * Set by onNext if the ingress queue was full, which can only happen if upstream has violated demand.
+   */
+  private volatile boolean ingressOverflow;
+
+  SubscriberInlet(BuiltGraph builtGraph, EngineSettings settings) {
     this.builtGraph = builtGraph;
-    this.bufferHighWatermark = bufferHighWatermark;
-    this.bufferLowWatermark = bufferLowWatermark;
+    this.settings = settings;
+    this.adaptiveBuffer = settings.isAdaptiveBuffer();
+    this.bufferHighWatermark = settings.getBufferHighWatermark();
+    this.bufferLowWatermark = settings.getBufferLowWatermark();
+    if (settings.isIngressQueue()) {
+      // Outstanding demand never exceeds the high watermark, which can't grow beyond the max
+      ingress = new SpscRingBuffer<>(adaptiveBuffer ? settings.getMaxBufferHighWatermark() : bufferHighWatermark);
+      ingressSignals = new AtomicInteger();
+      drainIngress = this::drainIngress;
+    } else {
+      ingress = null;
+      ingressSignals = null;
+      drainIngress = null;
+    }
   }
 
   @Override
@@ -86,38 +132,100 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
     if (!upstreamFinished) {
       int bufferSize = outstandingDemand + elements.size();
       if (bufferSize <= bufferLowWatermark) {
+        if (adaptiveBuffer) {
+          adaptWatermarks();
+        }
         int toRequest = bufferHighWatermark - bufferSize;
-        subscription.request(toRequest);
-        outstandingDemand += toRequest;
+        if (toRequest > 0) {
+          subscription.request(toRequest);
+          outstandingDemand += toRequest;
+        }
       }
     }
   }
 
+  private void adaptWatermarks() {
+    int highWatermark = bufferHighWatermark;
+    if (starved) {
+      highWatermark = (int) Math.min((long) highWatermark * 2, settings.getMaxBufferHighWatermark());
+    } else if (backedUp) {
+      highWatermark = Math.max(highWatermark / 2, 1);
+    }
+    if (highWatermark != bufferHighWatermark) {
+      bufferHighWatermark = highWatermark;
+      // Keep the low watermark in the same proportion to the high watermark as configured
+      bufferLowWatermark = (int) ((long) highWatermark * settings.getBufferLowWatermark() /
+          settings.getBufferHighWatermark());
+    }
+    starved = false;
+    backedUp = false;
+  }
+
   @Override
   public void onNext(T item) {
     Objects.requireNonNull(item, "Elements passed to onNext must not be null");
-    builtGraph.execute(() -> {
-      if (downstreamFinished || upstreamFinished) {
-        // Ignore events after cancellation or complete
-      } else if (outstandingDemand == 0) {
+    if (ingress != null) {
+      if (!ingress.offer(item)) {
+        ingressOverflow = true;
+      }
+      if (ingressSignals.getAndIncrement() == 0) {
+        builtGraph.execute(drainIngress);
+      }
+    } else {
+      builtGraph.execute(() -> receive(item));
+    }
+  }
+
+  private void receive(T item) {
+    if (downstreamFinished || upstreamFinished) {
+      // Ignore events after cancellation or complete
+    } else if (outstandingDemand == 0) {
+      onStreamFailure(new IllegalStateException("Element signalled without demand for it"));
+    } else {
+      outstandingDemand -= 1;
+      elements.add(item);
+      if (pulled && elementToPush == null) {
+        builtGraph.enqueueSignal(this);
+      }
+    }
+  }
+
+  /**
+   * Drain the ingress queue, until no more onNext signals have arrived since the last time it was drained.
+   */
+  private void drainIngress() {
+    int signals = ingressSignals.get();
+    while (true) {
+      drainIngressElements();
+      signals = ingressSignals.addAndGet(-signals);
+      if (signals == 0) {
+        return;
+      }
+    }
+  }
+
+  private void drainIngressElements() {
+    if (ingress != null) {
+      for (T item = ingress.poll(); item != null; item = ingress.poll()) {
+        receive(item);
+      }
+      if (ingressOverflow && !upstreamFinished && !downstreamFinished) {
         onStreamFailure(new IllegalStateException("Element signalled without demand for it"));
-      } else {
-        outstandingDemand -= 1;
-        elements.add(item);
-        if (pulled && elementToPush == null) {
-          builtGraph.enqueueSignal(this);
-        }
       }
-    });
+    }
   }
 
   @Override
   public void signal() {
     if (!downstreamFinished) {
-      if (!elements.isEmpty() && elementToPush == null) {
-        elementToPush = elements.poll();
-        listener.onPush();
-      } else if (upstreamFinished) {
+      if (!elements.isEmpty()) {
+        // This signal may have been enqueued by both a pull and an onNext, so check that we're still pulled, and haven't
+        // already pushed.
+        if (pulled && elementToPush == null) {
+          elementToPush = elements.poll();
+          listener.onPush();
+        }
+      } else if (upstreamFinished && elementToPush == null) {
         downstreamFinished = true;
         if (error == null) {
           listener.onUpstreamFinish();
@@ -133,6 +241,8 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
   public void onError(Throwable throwable) {
     Objects.requireNonNull(throwable, "Error passed to onError must not be null");
     builtGraph.execute(() -> {
+      // Any elements still in the ingress queue were signalled before this
+      drainIngressElements();
       if (downstreamFinished || upstreamFinished) {
         // Ignore
       } else {
@@ -152,6 +262,8 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
   @Override
   public void onComplete() {
     builtGraph.execute(() -> {
+      // Any elements still in the ingress queue were signalled before this
+      drainIngressElements();
       if (downstreamFinished || upstreamFinished) {
         // Ignore
       } else {
@@ -177,6 +289,8 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
     pulled = true;
     if (!elements.isEmpty()) {
       builtGraph.enqueueSignal(this);
+    } else if (!upstreamFinished) {
+      starved = true;
     }
   }
 
@@ -204,6 +318,11 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
       upstreamFinished = true;
       error = null;
       elements.clear();
+      if (ingress != null) {
+        // Release any elements that have arrived but not been drained yet
+        while (ingress.poll() != null) {
+        }
+      }
       if (subscription != null) {
         subscription.cancel();
         subscription = null;
@@ -228,6 +347,9 @@ final class SubscriberInlet<T> implements StageInlet<T>, Subscriber<T>, Port, Un
       if (elements.isEmpty() && upstreamFinished) {
         builtGraph.enqueueSignal(this);
       } else {
+        if (!elements.isEmpty()) {
+          backedUp = true;
+        }
         maybeRequest();
       }
       return element;
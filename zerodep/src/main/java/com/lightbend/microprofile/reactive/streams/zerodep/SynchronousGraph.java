@@ -0,0 +1,275 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A closed graph that can be run synchronously.
+ * <p>
+ * A closed graph whose source is an of stage, whose sink is a collect or find first stage, and whose stages in between
+ * are all map, filter, take while or flat map iterable stages, involves no asynchronous boundaries, and so doesn't need
+ * ports, signals or a mutex to run. Instead, it's run in a single loop, that passes each element through a chain of
+ * steps, one for each stage.
+ * <p>
+ * The loop is either run as a single task on the engine's executor, or directly on the calling thread, in which case
+ * the returned completion stage is already completed.
+ * <p>
+ * If parallel synchronous graphs are enabled, and the graph contains only map and flat map iterable stages and ends in
+ * a collect stage, then a large enough source is instead split using its spliterator, with the splits run on a fork
+ * join pool, and the partial results merged using the collector's combiner. This is done using a parallel
+ * {@link Stream}. Sources that don't know their size, such as plain iterables, are never run in parallel.
+ */
+final class SynchronousGraph {
+
+  private final Iterable<?> elements;
+  private final List<Stage> stages;
+  private final Stage sink;
+  /**
+   * Whether the graph can be run in parallel, that is, whether all its stages are stateless, and its sink can combine
+   * partial results.
+   */
+  private final boolean parallelizable;
+
+  private SynchronousGraph(Iterable<?> elements, List<Stage> stages, Stage sink, boolean parallelizable) {
+    this.elements = elements;
+    this.stages = stages;
+    this.sink = sink;
+    this.parallelizable = parallelizable;
+  }
+
+  /**
+   * Compile the given stages into a synchronous graph.
+   *
+   * @return The synchronous graph, or null if the stages can't be run synchronously.
+   */
+  static SynchronousGraph compile(Collection<Stage> graphStages) {
+    if (graphStages.size() < 2) {
+      return null;
+    }
+    Iterator<Stage> iter = graphStages.iterator();
+    Stage first = iter.next();
+    if (!(first instanceof Stage.Of)) {
+      return null;
+    }
+    List<Stage> stages = new ArrayList<>(graphStages.size() - 2);
+    boolean parallelizable = true;
+    while (iter.hasNext()) {
+      Stage stage = iter.next();
+      if (!iter.hasNext()) {
+        if (stage instanceof Stage.Collect || stage instanceof Stage.FindFirst) {
+          return new SynchronousGraph(((Stage.Of) first).getElements(), stages, stage,
+              parallelizable && stage instanceof Stage.Collect);
+        } else {
+          return null;
+        }
+      } else if (stage instanceof Stage.Map || stage instanceof Stage.Filter || stage instanceof Stage.TakeWhile ||
+          stage instanceof Stage.FlatMapIterable) {
+        stages.add(stage);
+        // Filter and take while predicates may be stateful, such as the predicates used for skip and distinct, so they
+        // can't be shared between the splits of a parallel run.
+        parallelizable &= stage instanceof Stage.Map || stage instanceof Stage.FlatMapIterable;
+      } else {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Run the graph.
+   *
+   * @param executor The executor to run the graph on.
+   * @param settings The settings to run the graph with.
+   */
+  <T> CompletionStage<T> run(Executor executor, EngineSettings settings) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    if (parallelizable && settings.isParallelSynchronousGraphs()) {
+      Spliterator<?> spliterator = elements.spliterator();
+      // Unsized spliterators estimate their size as Long.MAX_VALUE, so only an exact size is compared to the threshold
+      if (spliterator.getExactSizeIfKnown() >= settings.getParallelSynchronousGraphThreshold()) {
+        // Parallel streams fork their tasks into the pool of the thread that runs them, so if the executor is a fork
+        // join pool, we run the stream in it, otherwise we use the common pool.
+        ForkJoinPool pool = executor instanceof ForkJoinPool ? (ForkJoinPool) executor : ForkJoinPool.commonPool();
+        pool.execute(() -> runParallel(spliterator, result));
+        return result;
+      }
+    }
+    if (settings.isSynchronousGraphsOnCallingThread()) {
+      run(result);
+    } else {
+      executor.execute(() -> run(result));
+    }
+    return result;
+  }
+
+  private <T> void run(CompletableFuture<T> result) {
+    try {
+      // Steps are created for each run, since predicates are supplied afresh for each run, and the sink is stateful.
+      Sink sink = createSink();
+      Step head = sink;
+      for (int i = stages.size() - 1; i >= 0; i--) {
+        head = createStep(stages.get(i), head);
+      }
+      for (Object element : elements) {
+        if (!head.onNext(Objects.requireNonNull(element, "Elements cannot be null"))) {
+          break;
+        }
+      }
+      result.complete((T) sink.result());
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  private <T> void runParallel(Spliterator<?> spliterator, CompletableFuture<T> result) {
+    try {
+      Collector<Object, Object, T> collector = (Collector) ((Stage.Collect) sink).getCollector();
+      Stream<Object> stream = StreamSupport.stream((Spliterator<Object>) spliterator, true)
+          .map(element -> Objects.requireNonNull(element, "Elements cannot be null"));
+      // If the collector doesn't care about order, then neither do the splits.
+      if (collector.characteristics().contains(Collector.Characteristics.UNORDERED)) {
+        stream = stream.unordered();
+      }
+      for (Stage stage : stages) {
+        stream = parallelStep(stage, stream);
+      }
+      result.complete(stream.collect(collector));
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  private static Stream<Object> parallelStep(Stage stage, Stream<Object> stream) {
+    if (stage instanceof Stage.Map) {
+      Function<Object, Object> mapper = (Function) ((Stage.Map) stage).getMapper();
+      return stream.map(element -> Objects.requireNonNull(mapper.apply(element), "Elements cannot be null"));
+    } else {
+      Function<Object, Iterable<Object>> mapper = (Function) ((Stage.FlatMapIterable) stage).getMapper();
+      return stream.flatMap(element -> StreamSupport.stream(mapper.apply(element).spliterator(), false)
+          .map(subElement -> Objects.requireNonNull(subElement, "Elements cannot be null")));
+    }
+  }
+
+  private Sink createSink() {
+    if (sink instanceof Stage.Collect) {
+      return new CollectSink(((Stage.Collect) sink).getCollector());
+    } else {
+      return new FindFirstSink();
+    }
+  }
+
+  private static Step createStep(Stage stage, Step next) {
+    if (stage instanceof Stage.Map) {
+      Function<Object, Object> mapper = (Function) ((Stage.Map) stage).getMapper();
+      return element -> next.onNext(Objects.requireNonNull(mapper.apply(element), "Elements cannot be null"));
+    } else if (stage instanceof Stage.Filter) {
+      Predicate<Object> predicate = (Predicate) ((Stage.Filter) stage).getPredicate().get();
+      return element -> !predicate.test(element) || next.onNext(element);
+    } else if (stage instanceof Stage.TakeWhile) {
+      Predicate<Object> predicate = (Predicate) ((Stage.TakeWhile) stage).getPredicate().get();
+      boolean inclusive = ((Stage.TakeWhile) stage).isInclusive();
+      return element -> {
+        if (predicate.test(element)) {
+          return next.onNext(element);
+        } else {
+          if (inclusive) {
+            next.onNext(element);
+          }
+          return false;
+        }
+      };
+    } else {
+      Function<Object, Iterable<Object>> mapper = (Function) ((Stage.FlatMapIterable) stage).getMapper();
+      return element -> {
+        for (Object subElement : mapper.apply(element)) {
+          if (!next.onNext(Objects.requireNonNull(subElement, "Elements cannot be null"))) {
+            return false;
+          }
+        }
+        return true;
+      };
+    }
+  }
+
+  /**
+   * A step that an element passes through.
+   */
+  private interface Step {
+    /**
+     * Handle an element.
+     *
+     * @return Whether more elements should be passed to this step.
+     */
+    boolean onNext(Object element);
+  }
+
+  private interface Sink extends Step {
+    Object result();
+  }
+
+  private static final class CollectSink implements Sink {
+    private final Collector<Object, Object, Object> collector;
+    private final BiConsumer<Object, Object> accumulator;
+    private final Object container;
+
+    private CollectSink(Collector collector) {
+      this.collector = collector;
+      this.accumulator = this.collector.accumulator();
+      this.container = this.collector.supplier().get();
+    }
+
+    @Override
+    public boolean onNext(Object element) {
+      accumulator.accept(container, element);
+      return true;
+    }
+
+    @Override
+    public Object result() {
+      return collector.finisher().apply(container);
+    }
+  }
+
+  private static final class FindFirstSink implements Sink {
+    private Object first;
+
+    @Override
+    public boolean onNext(Object element) {
+      first = element;
+      return false;
+    }
+
+    @Override
+    public Object result() {
+      return Optional.ofNullable(first);
+    }
+  }
+}
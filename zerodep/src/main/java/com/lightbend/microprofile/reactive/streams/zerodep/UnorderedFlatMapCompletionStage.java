@@ -0,0 +1,133 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Implements {@link ZeroDepStage.UnorderedFlatMapCompletionStage}, flat mapping to completion stages of elements, and
+ * emitting the results in the order that the completion stages are redeemed.
+ *
+ * Redeemed results that downstream hasn't pulled yet count towards the parallelism.
+ */
+class UnorderedFlatMapCompletionStage<T, R> extends GraphStage implements InletListener, OutletListener {
+  private final StageInlet<T> inlet;
+  private final StageOutlet<R> outlet;
+  private final Function<T, CompletionStage<R>> mapper;
+  private final int parallelism;
+
+  private final Deque<R> redeemed = new ArrayDeque<>();
+  private int inFlight;
+  private Throwable error;
+
+  UnorderedFlatMapCompletionStage(BuiltGraph builtGraph, StageInlet<T> inlet, StageOutlet<R> outlet,
+      Function<T, CompletionStage<R>> mapper, int parallelism) {
+    super(builtGraph);
+    this.inlet = inlet;
+    this.outlet = outlet;
+    this.mapper = mapper;
+    this.parallelism = parallelism;
+
+    inlet.setListener(this);
+    outlet.setListener(this);
+  }
+
+  @Override
+  public void onPush() {
+    inFlight++;
+    CompletionStage<R> future = mapper.apply(inlet.grab());
+    future.whenCompleteAsync((result, error) -> {
+      if (!outlet.isClosed()) {
+        inFlight--;
+        if (error == null) {
+          if (outlet.isAvailable()) {
+            push(result);
+          } else {
+            redeemed.add(result);
+          }
+        } else {
+          redeemed.clear();
+          outlet.fail(error);
+          if (!inlet.isClosed()) {
+            inlet.cancel();
+          }
+        }
+      }
+    }, executor());
+    pullIfCapacity();
+  }
+
+  private void push(R result) {
+    outlet.push(result);
+    if (inlet.isClosed()) {
+      // The push may have caused the outlet to be closed, so check before terminating it
+      if (inFlight == 0 && redeemed.isEmpty() && !outlet.isClosed()) {
+        if (error != null) {
+          outlet.fail(error);
+        } else {
+          outlet.complete();
+        }
+      }
+    } else {
+      pullIfCapacity();
+    }
+  }
+
+  /**
+   * Pull upstream if there's room for another completion stage.
+   * <p>
+   * With a parallelism of one, upstream is only pulled when downstream has pulled, so the mapper is never invoked
+   * ahead of demand. With more, the window is filled ahead of demand, so that completion stages run concurrently.
+   */
+  private void pullIfCapacity() {
+    if (inFlight + redeemed.size() < parallelism && !inlet.isClosed() && !inlet.isPulled() &&
+        (parallelism > 1 || outlet.isAvailable())) {
+      inlet.pull();
+    }
+  }
+
+  @Override
+  public void onUpstreamFinish() {
+    if (inFlight == 0 && redeemed.isEmpty()) {
+      outlet.complete();
+    }
+  }
+
+  @Override
+  public void onUpstreamFailure(Throwable error) {
+    if (inFlight == 0 && redeemed.isEmpty()) {
+      outlet.fail(error);
+    } else {
+      this.error = error;
+    }
+  }
+
+  @Override
+  public void onPull() {
+    if (!redeemed.isEmpty()) {
+      push(redeemed.poll());
+    } else {
+      pullIfCapacity();
+    }
+  }
+
+  @Override
+  public void onDownstreamFinish() {
+    redeemed.clear();
+    if (!inlet.isClosed()) {
+      inlet.cancel();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor that runs each task on a new virtual thread.
+ * <p>
+ * Graphs only ever submit one task at a time to their executor, so when a graph runs on this executor, each burst of
+ * signals for the graph is handled by its own virtual thread. If a user function blocks, only that virtual thread is
+ * parked, rather than a platform thread from the pool being held up.
+ * <p>
+ * Virtual threads are only available from JDK 21, so they are looked up reflectively, allowing this library to
+ * continue to run on older JDKs.
+ */
+final class VirtualThreadExecutor implements Executor {
+
+  private final ThreadFactory threadFactory;
+
+  private VirtualThreadExecutor(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    threadFactory.newThread(Objects.requireNonNull(command, "Runnable must not be null")).start();
+  }
+
+  /**
+   * Create a virtual thread executor.
+   *
+   * @throws UnsupportedOperationException If the running JDK does not support virtual threads.
+   */
+  static Executor create() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, "reactive-streams-engine-", 0L);
+      Method factory = builderClass.getMethod("factory");
+      return new VirtualThreadExecutor((ThreadFactory) factory.invoke(builder));
+    } catch (ReflectiveOperationException e) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JDK", e);
+    }
+  }
+}
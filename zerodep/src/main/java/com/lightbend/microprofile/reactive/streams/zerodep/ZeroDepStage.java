@@ -0,0 +1,504 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Stages that are specific to the zerodep engine.
+ * <p>
+ * These stages are not part of the MicroProfile Reactive Streams specification, so they can't be added to a graph
+ * using the reactive streams builders. Instead, a graph containing them can be created directly, by passing a list of
+ * stages to {@link Graph#Graph(java.util.Collection)}, and then built using {@link ReactiveStreamsEngineImpl}. Other
+ * engines will reject them with an {@link org.eclipse.microprofile.reactive.streams.spi.UnsupportedStageException}.
+ * <p>
+ * The int, long and double stages operate on primitive values. Consecutive primitive stages of the same type, that is,
+ * an optional map to primitive stage, followed by any primitive map and filter stages, and optionally ended by a map
+ * to object or primitive collect stage, are run together as a single stage, with the values passed between them as
+ * primitives, so no boxing is done. If a run isn't started by a map to primitive stage, the elements it receives must
+ * be boxed values of its type, which are unboxed, and if it isn't ended by a map to object or primitive collect stage,
+ * then the values are boxed as they leave the run.
+ */
+public interface ZeroDepStage extends Stage {
+
+  /**
+   * A flat map stage that runs multiple sub streams at once.
+   * <p>
+   * Up to parallelism sub streams are kept running at once, and elements are emitted as soon as any of them produce
+   * them, so the order of elements between sub streams is not preserved. When parallelism sub streams are running,
+   * no more elements are requested from upstream until one of them completes.
+   * <p>
+   * If upstream, or any of the sub streams, fail, then the stream fails immediately, and all the running sub streams
+   * are cancelled.
+   */
+  final class FlatMapMerge implements ZeroDepStage {
+    private final Function<?, Graph> mapper;
+    private final int parallelism;
+
+    /**
+     * Create a flat map merge stage.
+     *
+     * @param mapper The mapper function, which returns a publisher graph for each element.
+     * @param parallelism The maximum number of sub streams to run at once, must be at least one.
+     */
+    public FlatMapMerge(Function<?, Graph> mapper, int parallelism) {
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("Parallelism must be at least one");
+      }
+      this.mapper = Objects.requireNonNull(mapper, "Mapper must not be null");
+      this.parallelism = parallelism;
+    }
+
+    /**
+     * The mapper function.
+     */
+    public Function<?, Graph> getMapper() {
+      return mapper;
+    }
+
+    /**
+     * The maximum number of sub streams to run at once.
+     */
+    public int getParallelism() {
+      return parallelism;
+    }
+  }
+
+  /**
+   * A flat map completion stage that emits results in the order that the completion stages are redeemed, rather than
+   * in upstream order.
+   * <p>
+   * Up to parallelism completion stages may be in flight, or redeemed but not yet emitted, at once. Since results don't
+   * wait for the results of earlier elements, one slow completion stage doesn't hold up the elements behind it. If any
+   * completion stage fails, the stream fails immediately.
+   */
+  final class UnorderedFlatMapCompletionStage implements ZeroDepStage {
+    private final Function<?, CompletionStage<?>> mapper;
+    private final int parallelism;
+
+    /**
+     * Create an unordered flat map completion stage.
+     *
+     * @param mapper The mapper function, which returns a completion stage of the result for each element.
+     * @param parallelism The maximum number of completion stages to have in flight at once, must be at least one.
+     */
+    public UnorderedFlatMapCompletionStage(Function<?, CompletionStage<?>> mapper, int parallelism) {
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("Parallelism must be at least one");
+      }
+      this.mapper = Objects.requireNonNull(mapper, "Mapper must not be null");
+      this.parallelism = parallelism;
+    }
+
+    /**
+     * The mapper function.
+     */
+    public Function<?, CompletionStage<?>> getMapper() {
+      return mapper;
+    }
+
+    /**
+     * The maximum number of completion stages to have in flight at once.
+     */
+    public int getParallelism() {
+      return parallelism;
+    }
+  }
+
+  /**
+   * The ways that a primitive collect stage can accumulate values.
+   */
+  enum Accumulation {
+    SUM, MIN, MAX, COUNT
+  }
+
+  /**
+   * A primitive map stage.
+   */
+  abstract class PrimitiveMap<F> implements ZeroDepStage {
+    private final F mapper;
+
+    PrimitiveMap(F mapper) {
+      this.mapper = Objects.requireNonNull(mapper, "Mapper must not be null");
+    }
+
+    /**
+     * The mapper function.
+     */
+    public F getMapper() {
+      return mapper;
+    }
+  }
+
+  /**
+   * A primitive filter stage.
+   */
+  abstract class PrimitiveFilter<P> implements ZeroDepStage {
+    private final Supplier<P> predicate;
+
+    PrimitiveFilter(Supplier<P> predicate) {
+      this.predicate = Objects.requireNonNull(predicate, "Predicate must not be null");
+    }
+
+    /**
+     * The supplier of the predicate.
+     */
+    public Supplier<P> getPredicate() {
+      return predicate;
+    }
+  }
+
+  /**
+   * A primitive collect stage.
+   */
+  abstract class PrimitiveCollect implements ZeroDepStage {
+    private final Accumulation accumulation;
+
+    PrimitiveCollect(Accumulation accumulation) {
+      this.accumulation = accumulation;
+    }
+
+    /**
+     * How the values are accumulated.
+     */
+    public Accumulation getAccumulation() {
+      return accumulation;
+    }
+
+    @Override
+    public boolean hasOutlet() {
+      return false;
+    }
+  }
+
+  /**
+   * A map stage that maps elements to primitive ints.
+   */
+  final class MapToInt extends PrimitiveMap<ToIntFunction<?>> {
+    /**
+     * Create a map to int stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public MapToInt(ToIntFunction<?> mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A map stage on primitive ints.
+   */
+  final class IntMap extends PrimitiveMap<IntUnaryOperator> {
+    /**
+     * Create a int map stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public IntMap(IntUnaryOperator mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A filter stage on primitive ints.
+   */
+  final class IntFilter extends PrimitiveFilter<IntPredicate> {
+    /**
+     * Create a int filter stage.
+     *
+     * @param predicate The supplier of the predicate, invoked each time a graph containing this stage is built.
+     */
+    public IntFilter(Supplier<IntPredicate> predicate) {
+      super(predicate);
+    }
+  }
+
+  /**
+   * A map stage that maps primitive ints back to elements.
+   */
+  final class IntMapToObject extends PrimitiveMap<IntFunction<?>> {
+    /**
+     * Create a int map to object stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public IntMapToObject(IntFunction<?> mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A collect stage that accumulates primitive ints.
+   * <p>
+   * The sum collect stage redeems an {@link Integer}, overflowing as int addition does, and the count collect stage
+   * redeems a {@link Long}. The min and max collect stages redeem an {@link java.util.OptionalInt}, which is empty if
+   * the stream was empty.
+   */
+  final class IntCollect extends PrimitiveCollect {
+    private static final IntCollect SUM = new IntCollect(Accumulation.SUM);
+    private static final IntCollect MIN = new IntCollect(Accumulation.MIN);
+    private static final IntCollect MAX = new IntCollect(Accumulation.MAX);
+    private static final IntCollect COUNT = new IntCollect(Accumulation.COUNT);
+
+    private IntCollect(Accumulation accumulation) {
+      super(accumulation);
+    }
+
+    /**
+     * A stage that sums the values.
+     */
+    public static IntCollect sum() {
+      return SUM;
+    }
+
+    /**
+     * A stage that finds the minimum value.
+     */
+    public static IntCollect min() {
+      return MIN;
+    }
+
+    /**
+     * A stage that finds the maximum value.
+     */
+    public static IntCollect max() {
+      return MAX;
+    }
+
+    /**
+     * A stage that counts the values.
+     */
+    public static IntCollect count() {
+      return COUNT;
+    }
+  }
+
+  /**
+   * A map stage that maps elements to primitive longs.
+   */
+  final class MapToLong extends PrimitiveMap<ToLongFunction<?>> {
+    /**
+     * Create a map to long stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public MapToLong(ToLongFunction<?> mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A map stage on primitive longs.
+   */
+  final class LongMap extends PrimitiveMap<LongUnaryOperator> {
+    /**
+     * Create a long map stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public LongMap(LongUnaryOperator mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A filter stage on primitive longs.
+   */
+  final class LongFilter extends PrimitiveFilter<LongPredicate> {
+    /**
+     * Create a long filter stage.
+     *
+     * @param predicate The supplier of the predicate, invoked each time a graph containing this stage is built.
+     */
+    public LongFilter(Supplier<LongPredicate> predicate) {
+      super(predicate);
+    }
+  }
+
+  /**
+   * A map stage that maps primitive longs back to elements.
+   */
+  final class LongMapToObject extends PrimitiveMap<LongFunction<?>> {
+    /**
+     * Create a long map to object stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public LongMapToObject(LongFunction<?> mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A collect stage that accumulates primitive longs.
+   * <p>
+   * The sum and count collect stages redeem a {@link Long}, the min and max collect stages redeem an
+   * {@link java.util.OptionalLong}, which is empty if the stream was empty.
+   */
+  final class LongCollect extends PrimitiveCollect {
+    private static final LongCollect SUM = new LongCollect(Accumulation.SUM);
+    private static final LongCollect MIN = new LongCollect(Accumulation.MIN);
+    private static final LongCollect MAX = new LongCollect(Accumulation.MAX);
+    private static final LongCollect COUNT = new LongCollect(Accumulation.COUNT);
+
+    private LongCollect(Accumulation accumulation) {
+      super(accumulation);
+    }
+
+    /**
+     * A stage that sums the values.
+     */
+    public static LongCollect sum() {
+      return SUM;
+    }
+
+    /**
+     * A stage that finds the minimum value.
+     */
+    public static LongCollect min() {
+      return MIN;
+    }
+
+    /**
+     * A stage that finds the maximum value.
+     */
+    public static LongCollect max() {
+      return MAX;
+    }
+
+    /**
+     * A stage that counts the values.
+     */
+    public static LongCollect count() {
+      return COUNT;
+    }
+  }
+
+  /**
+   * A map stage that maps elements to primitive doubles.
+   */
+  final class MapToDouble extends PrimitiveMap<ToDoubleFunction<?>> {
+    /**
+     * Create a map to double stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public MapToDouble(ToDoubleFunction<?> mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A map stage on primitive doubles.
+   */
+  final class DoubleMap extends PrimitiveMap<DoubleUnaryOperator> {
+    /**
+     * Create a double map stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public DoubleMap(DoubleUnaryOperator mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A filter stage on primitive doubles.
+   */
+  final class DoubleFilter extends PrimitiveFilter<DoublePredicate> {
+    /**
+     * Create a double filter stage.
+     *
+     * @param predicate The supplier of the predicate, invoked each time a graph containing this stage is built.
+     */
+    public DoubleFilter(Supplier<DoublePredicate> predicate) {
+      super(predicate);
+    }
+  }
+
+  /**
+   * A map stage that maps primitive doubles back to elements.
+   */
+  final class DoubleMapToObject extends PrimitiveMap<DoubleFunction<?>> {
+    /**
+     * Create a double map to object stage.
+     *
+     * @param mapper The mapper function.
+     */
+    public DoubleMapToObject(DoubleFunction<?> mapper) {
+      super(mapper);
+    }
+  }
+
+  /**
+   * A collect stage that accumulates primitive doubles.
+   * <p>
+   * The sum collect stage redeems a {@link Double}, and the count collect stage redeems a {@link Long}. The min and max
+   * collect stages redeem an {@link java.util.OptionalDouble}, which is empty if the stream was empty.
+   */
+  final class DoubleCollect extends PrimitiveCollect {
+    private static final DoubleCollect SUM = new DoubleCollect(Accumulation.SUM);
+    private static final DoubleCollect MIN = new DoubleCollect(Accumulation.MIN);
+    private static final DoubleCollect MAX = new DoubleCollect(Accumulation.MAX);
+    private static final DoubleCollect COUNT = new DoubleCollect(Accumulation.COUNT);
+
+    private DoubleCollect(Accumulation accumulation) {
+      super(accumulation);
+    }
+
+    /**
+     * A stage that sums the values.
+     */
+    public static DoubleCollect sum() {
+      return SUM;
+    }
+
+    /**
+     * A stage that finds the minimum value.
+     */
+    public static DoubleCollect min() {
+      return MIN;
+    }
+
+    /**
+     * A stage that finds the maximum value.
+     */
+    public static DoubleCollect max() {
+      return MAX;
+    }
+
+    /**
+     * A stage that counts the values.
+     */
+    public static DoubleCollect count() {
+      return COUNT;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class BuiltGraphTest {
+
+  private static final int ELEMENTS = 100;
+  private static final int MANY_ELEMENTS = 1000;
+
+  @Test
+  public void unrolledSignalsAreDrainedWithinTheBudget() throws Exception {
+    assertEquals(elementsReceivedBeforeExternalCancel(ELEMENTS * 2), ELEMENTS);
+  }
+
+  @Test
+  public void externalSignalsAreRunOnceTheDrainBudgetIsUsedUp() throws Exception {
+    assertTrue(elementsReceivedBeforeExternalCancel(2) < ELEMENTS);
+  }
+
+  @Test
+  public void requestsFromOnNextAreUnrolledRatherThanNestedOrSubmitted() throws Exception {
+    AtomicInteger submissions = new AtomicInteger();
+    Executor countingExecutor = task -> {
+      submissions.incrementAndGet();
+      task.run();
+    };
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(countingExecutor,
+        EngineSettings.defaults().withSignalDrainBudget(MANY_ELEMENTS));
+    // More elements than the throughput of the graph's mutex, so submitting the requests to the mutex would cause it to
+    // resubmit itself to the executor
+    List<Integer> elements = IntStream.range(0, MANY_ELEMENTS).boxed().collect(Collectors.toList());
+    List<Object> received = new ArrayList<>();
+    AtomicBoolean reentered = new AtomicBoolean();
+    AtomicInteger submissionsBeforeFirstElement = new AtomicInteger();
+    engine.buildPublisher(graph(new Stage.Of(elements))).subscribe(new Subscriber<Object>() {
+      private Subscription subscription;
+      private boolean inOnNext;
+
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(Object element) {
+        if (inOnNext) {
+          reentered.set(true);
+        }
+        inOnNext = true;
+        if (received.isEmpty()) {
+          submissionsBeforeFirstElement.set(submissions.get());
+        }
+        received.add(element);
+        subscription.request(1);
+        inOnNext = false;
+      }
+
+      @Override
+      public void onError(Throwable error) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+    assertEquals(received, elements);
+    assertFalse(reentered.get());
+    // None of the requests made from onNext were submitted to the executor
+    assertEquals(submissions.get(), submissionsBeforeFirstElement.get());
+  }
+
+  /**
+   * Run a publisher of elements on the calling thread, with a subscriber that requests one element at a time from
+   * onNext, so that each request is an unrolled signal. When it receives the first element, the subscriber cancels
+   * from another thread, which submits the cancel to the graph as an external signal.
+   *
+   * @return The number of elements received.
+   */
+  private static int elementsReceivedBeforeExternalCancel(int signalDrainBudget) throws Exception {
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(Runnable::run,
+        EngineSettings.defaults().withSignalDrainBudget(signalDrainBudget));
+    List<Integer> elements = IntStream.range(0, ELEMENTS).boxed().collect(Collectors.toList());
+    List<Object> received = new ArrayList<>();
+    engine.buildPublisher(graph(new Stage.Of(elements))).subscribe(new Subscriber<Object>() {
+      private Subscription subscription;
+
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(Object element) {
+        received.add(element);
+        if (received.size() == 1) {
+          Thread canceller = new Thread(subscription::cancel);
+          canceller.start();
+          try {
+            canceller.join();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable error) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+    return received.size();
+  }
+}
@@ -0,0 +1,131 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.run;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class ConcatStageTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+
+  @Test
+  public void cancellationCancelsPublisherInputsWithoutBuildingThem() throws Exception {
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    AtomicInteger built = new AtomicInteger();
+    Graph second = graph(new Stage.PublisherStage(neverCompletes(cancelled)), countingFilter(built));
+
+    Object result = run(engine, graph(new Stage.Concat(graph(new Stage.Of(Arrays.asList(1, 2))), second),
+        Stage.FindFirst.INSTANCE));
+
+    assertEquals(result, Optional.of(1));
+    cancelled.get(1, TimeUnit.SECONDS);
+    assertEquals(built.get(), 0);
+  }
+
+  @Test
+  public void failureCancelsPublisherInputsWithoutBuildingThem() throws Exception {
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    AtomicInteger built = new AtomicInteger();
+    Graph second = graph(new Stage.PublisherStage(neverCompletes(cancelled)), countingFilter(built));
+
+    try {
+      run(engine, graph(new Stage.Concat(graph(new Stage.Failed(new RuntimeException("failed"))), second),
+          new Stage.Collect(Collectors.toList())));
+      fail("Expected the stream to fail");
+    } catch (ExecutionException e) {
+      assertEquals(e.getCause().getMessage(), "failed");
+    }
+    cancelled.get(1, TimeUnit.SECONDS);
+    assertEquals(built.get(), 0);
+  }
+
+  @Test
+  public void cancellationCancelsThePublishersOfNestedConcatInputs() throws Exception {
+    CompletableFuture<Void> firstCancelled = new CompletableFuture<>();
+    CompletableFuture<Void> secondCancelled = new CompletableFuture<>();
+    AtomicInteger built = new AtomicInteger();
+    Graph nested = graph(new Stage.Concat(
+        graph(new Stage.PublisherStage(neverCompletes(firstCancelled)), countingFilter(built)),
+        graph(new Stage.Concat(graph(new Stage.Of(Arrays.asList(3))),
+            graph(new Stage.PublisherStage(neverCompletes(secondCancelled)))))),
+        countingFilter(built));
+
+    Object result = run(engine, graph(new Stage.Concat(graph(new Stage.Of(Arrays.asList(1, 2))), nested),
+        Stage.FindFirst.INSTANCE));
+
+    assertEquals(result, Optional.of(1));
+    firstCancelled.get(1, TimeUnit.SECONDS);
+    secondCancelled.get(1, TimeUnit.SECONDS);
+    assertEquals(built.get(), 0);
+  }
+
+  @Test
+  public void cancellationBuildsAndCancelsInputsWithProcessors() throws Exception {
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    AtomicInteger built = new AtomicInteger();
+    Processor<Object, Object> processor = engine.buildProcessor(graph(new Stage.Map(i -> i)));
+    Graph second = graph(new Stage.PublisherStage(neverCompletes(cancelled)), countingFilter(built),
+        new Stage.ProcessorStage(processor));
+
+    Object result = run(engine, graph(new Stage.Concat(graph(new Stage.Of(Arrays.asList(1, 2))), second),
+        Stage.FindFirst.INSTANCE));
+
+    assertEquals(result, Optional.of(1));
+    cancelled.get(1, TimeUnit.SECONDS);
+    assertEquals(built.get(), 1);
+  }
+
+  /**
+   * A filter that lets everything through, and counts how many times it's built.
+   */
+  private static Stage.Filter countingFilter(AtomicInteger built) {
+    return new Stage.Filter(() -> {
+      built.incrementAndGet();
+      return (Predicate<Object>) element -> true;
+    });
+  }
+
+  /**
+   * A publisher that never emits or completes, and completes the given future when it's cancelled.
+   */
+  private static Publisher<Integer> neverCompletes(CompletableFuture<Void> cancelled) {
+    return subscriber -> subscriber.onSubscribe(new Subscription() {
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+        cancelled.complete(null);
+      }
+    });
+  }
+}
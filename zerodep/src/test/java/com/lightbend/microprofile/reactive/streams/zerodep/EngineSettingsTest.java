@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class EngineSettingsTest {
+
+  @Test
+  public void defaults() {
+    EngineSettings settings = EngineSettings.defaults();
+    assertEquals(settings.getBufferHighWatermark(), 8);
+    assertEquals(settings.getBufferLowWatermark(), 4);
+    assertFalse(settings.isAdaptiveBuffer());
+    assertEquals(settings.getMaxBufferHighWatermark(), 128);
+    assertEquals(settings.getOutletBatchSize(), 16);
+    assertEquals(settings.getSignalDrainBudget(), 32);
+    assertEquals(settings.getThroughput(), 128);
+    assertFalse(settings.isIngressQueue());
+    assertEquals(settings.getCompletionStageParallelism(), 1);
+    assertFalse(settings.isSynchronousGraphsOnCallingThread());
+    assertFalse(settings.isParallelSynchronousGraphs());
+    assertEquals(settings.getParallelSynchronousGraphThreshold(), 8192);
+    assertTrue(settings.getStageFactories().isEmpty());
+  }
+
+  @Test
+  public void withersOnlyChangeTheirOwnSettings() {
+    EngineSettings settings = EngineSettings.defaults()
+        .withOutletBatchSize(3)
+        .withThroughput(5)
+        .withIngressQueue(true)
+        .withParallelSynchronousGraphs(true, 7);
+    assertEquals(settings.getOutletBatchSize(), 3);
+    assertEquals(settings.getThroughput(), 5);
+    assertTrue(settings.isIngressQueue());
+    assertTrue(settings.isParallelSynchronousGraphs());
+    assertEquals(settings.getParallelSynchronousGraphThreshold(), 7);
+
+    assertEquals(settings.getBufferHighWatermark(), 8);
+    assertEquals(settings.getBufferLowWatermark(), 4);
+    assertEquals(settings.getSignalDrainBudget(), 32);
+    assertEquals(settings.getCompletionStageParallelism(), 1);
+    assertFalse(settings.isSynchronousGraphsOnCallingThread());
+  }
+
+  @Test
+  public void withersDontChangeTheSettingsTheyreInvokedOn() {
+    EngineSettings settings = EngineSettings.defaults().withSignalDrainBudget(10);
+    settings.withSignalDrainBudget(20);
+    assertEquals(settings.getSignalDrainBudget(), 10);
+    assertEquals(EngineSettings.defaults().getSignalDrainBudget(), 32);
+  }
+
+  @Test
+  public void raisingTheHighWatermarkAboveTheMaxRaisesTheMax() {
+    EngineSettings settings = EngineSettings.defaults().withBufferWatermarks(256, 64);
+    assertEquals(settings.getBufferHighWatermark(), 256);
+    assertEquals(settings.getBufferLowWatermark(), 64);
+    assertEquals(settings.getMaxBufferHighWatermark(), 256);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void lowWatermarkMustBeBelowTheHighWatermark() {
+    EngineSettings.defaults().withBufferWatermarks(4, 4);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void maxHighWatermarkMustBeAtLeastTheHighWatermark() {
+    EngineSettings.defaults().withAdaptiveBuffer(true, 4);
+  }
+}
@@ -0,0 +1,233 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+public class FlatMapCompletionStageTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+
+  @Test
+  public void mapperIsOnlyInvokedOnDemandWithAParallelismOfOne() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    Function<Integer, CompletionStage<?>> mapper = i -> {
+      invocations.incrementAndGet();
+      return CompletableFuture.completedFuture(i);
+    };
+    Publisher<Integer> publisher = engine.buildPublisher(graph(new Stage.Of(Arrays.asList(1, 2, 3, 4)),
+        new Stage.FlatMapCompletionStage(mapper)));
+    RequestingSubscriber<Integer> subscriber = new RequestingSubscriber<>();
+    publisher.subscribe(subscriber);
+
+    subscriber.request(1);
+    assertEquals(subscriber.next(), (Object) 1);
+    // Give the stage time to pull ahead, if it were going to
+    Thread.sleep(100);
+    assertEquals(invocations.get(), 1);
+
+    subscriber.request(1);
+    assertEquals(subscriber.next(), (Object) 2);
+    Thread.sleep(100);
+    assertEquals(invocations.get(), 2);
+    subscriber.cancel();
+  }
+
+  @Test
+  public void parallelCompletionStagesAreEmittedInUpstreamOrder() throws Exception {
+    List<Integer> elements = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+    // Later elements are redeemed sooner
+    Function<Integer, CompletionStage<?>> mapper = i -> CompletableFuture.supplyAsync(() -> {
+      try {
+        Thread.sleep(10 - i % 10);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return i;
+    });
+    ReactiveStreamsEngineImpl parallel = engine.withSettings(
+        EngineSettings.defaults().withCompletionStageParallelism(4));
+    Object result = parallel.buildCompletion(graph(new Stage.Of(elements), new Stage.FlatMapCompletionStage(mapper),
+        new Stage.Collect(Collectors.toList()))).toCompletableFuture().get(10, TimeUnit.SECONDS);
+    assertEquals(result, elements);
+  }
+
+  @Test
+  public void completionStagesRedeemedAfterUpstreamCompletesAreEmittedToAPublisher() throws Exception {
+    List<CompletableFuture<Integer>> futures = Arrays.asList(new CompletableFuture<>(), new CompletableFuture<>(),
+        new CompletableFuture<>());
+    Function<Integer, CompletionStage<?>> mapper = futures::get;
+    ReactiveStreamsEngineImpl parallel = engine.withSettings(
+        EngineSettings.defaults().withCompletionStageParallelism(4));
+    CompletableFuture<List<Object>> result = collect(parallel.buildPublisher(graph(
+        new Stage.Of(Arrays.asList(0, 1, 2)), new Stage.FlatMapCompletionStage(mapper))));
+
+    // Let upstream complete before any completion stage is redeemed
+    Thread.sleep(100);
+    futures.get(2).complete(3);
+    futures.get(1).complete(2);
+    futures.get(0).complete(1);
+    assertEquals(result.get(10, TimeUnit.SECONDS), Arrays.asList(1, 2, 3));
+  }
+
+  @Test
+  public void unorderedCompletionStagesAreEmittedAsTheyAreRedeemed() throws Exception {
+    CompletableFuture<Integer> first = new CompletableFuture<>();
+    Function<Integer, CompletionStage<?>> mapper = i -> i == 1 ? first : CompletableFuture.completedFuture(i);
+    Publisher<Integer> publisher = engine.buildPublisher(graph(new Stage.Of(Arrays.asList(1, 2)),
+        new ZeroDepStage.UnorderedFlatMapCompletionStage(mapper, 2)));
+    RequestingSubscriber<Integer> subscriber = new RequestingSubscriber<>();
+    publisher.subscribe(subscriber);
+
+    subscriber.request(2);
+    assertEquals(subscriber.next(), (Object) 2);
+    first.complete(1);
+    assertEquals(subscriber.next(), (Object) 1);
+  }
+
+  @Test
+  public void unorderedCompletionStagesRedeemedAfterUpstreamCompletesAreEmittedToAPublisher() throws Exception {
+    List<CompletableFuture<Integer>> futures = Arrays.asList(new CompletableFuture<>(), new CompletableFuture<>(),
+        new CompletableFuture<>());
+    Function<Integer, CompletionStage<?>> mapper = futures::get;
+    CompletableFuture<List<Object>> result = collect(engine.buildPublisher(graph(
+        new Stage.Of(Arrays.asList(0, 1, 2)), new ZeroDepStage.UnorderedFlatMapCompletionStage(mapper, 4))));
+
+    // Let upstream complete before any completion stage is redeemed
+    Thread.sleep(100);
+    futures.get(2).complete(3);
+    futures.get(1).complete(2);
+    futures.get(0).complete(1);
+    assertEquals(result.get(10, TimeUnit.SECONDS), Arrays.asList(3, 2, 1));
+  }
+
+  @Test
+  public void unorderedCompletionStagesInFlightAreLimitedToTheStagesParallelism() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    Function<Integer, CompletionStage<?>> mapper = i -> {
+      invocations.incrementAndGet();
+      return new CompletableFuture<>();
+    };
+    Publisher<Integer> publisher = engine.buildPublisher(graph(new Stage.Of(Arrays.asList(1, 2, 3, 4)),
+        new ZeroDepStage.UnorderedFlatMapCompletionStage(mapper, 2)));
+    RequestingSubscriber<Integer> subscriber = new RequestingSubscriber<>();
+    publisher.subscribe(subscriber);
+
+    subscriber.request(4);
+    Thread.sleep(100);
+    assertEquals(invocations.get(), 2);
+    subscriber.cancel();
+  }
+
+  private static Graph graph(Stage... stages) {
+    return new Graph(Arrays.asList(stages));
+  }
+
+  /**
+   * Subscribe to the publisher with unbounded demand, and collect its elements.
+   * <p>
+   * The returned future is failed if the publisher fails, or if it signals anything after it terminates.
+   */
+  static CompletableFuture<List<Object>> collect(Publisher<?> publisher) {
+    CompletableFuture<List<Object>> result = new CompletableFuture<>();
+    publisher.subscribe(new Subscriber<Object>() {
+      private final List<Object> elements = new ArrayList<>();
+
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(Object element) {
+        if (!result.isDone()) {
+          elements.add(element);
+        } else {
+          result.obtrudeException(new IllegalStateException("onNext after termination"));
+        }
+      }
+
+      @Override
+      public void onError(Throwable error) {
+        if (!result.completeExceptionally(error)) {
+          result.obtrudeException(new IllegalStateException("onError after termination", error));
+        }
+      }
+
+      @Override
+      public void onComplete() {
+        if (!result.complete(elements)) {
+          result.obtrudeException(new IllegalStateException("onComplete after termination"));
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * A subscriber that only requests when told to.
+   */
+  static class RequestingSubscriber<T> implements Subscriber<T> {
+    private final CompletableFuture<Subscription> subscription = new CompletableFuture<>();
+    private final LinkedBlockingQueue<Object> elements = new LinkedBlockingQueue<>();
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription.complete(subscription);
+    }
+
+    @Override
+    public void onNext(T element) {
+      elements.add(element);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      elements.add(error);
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    void request(long n) throws Exception {
+      subscription.get(1, TimeUnit.SECONDS).request(n);
+    }
+
+    void cancel() throws Exception {
+      subscription.get(1, TimeUnit.SECONDS).cancel();
+    }
+
+    Object next() throws Exception {
+      return elements.poll(1, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.function.Function;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class FlatMapIterableStageTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+
+  @Test
+  public void randomAccessListsAreEmittedAndCompletedWithoutFurtherDemand() throws Exception {
+    Function<Integer, Iterable<?>> mapper = i -> new ArrayList<>(Arrays.asList(i, i + 10, i + 20));
+    OfStageTest.CompletingSubscriber<Object> subscriber = subscribe(flatMap(mapper, 1, 2));
+    subscriber.request(6);
+    assertElements(subscriber, 1, 11, 21, 2, 12, 22);
+    subscriber.awaitCompletion();
+    assertNull(subscriber.next());
+  }
+
+  @Test
+  public void emptyAndSingleElementRandomAccessListsAreEmitted() throws Exception {
+    Function<Integer, Iterable<?>> mapper = i -> i % 2 == 0 ? Collections.emptyList() :
+        Collections.singletonList(i);
+    OfStageTest.CompletingSubscriber<Object> subscriber = subscribe(flatMap(mapper, 2, 1, 4, 3));
+    subscriber.request(2);
+    assertElements(subscriber, 1, 3);
+    subscriber.awaitCompletion();
+    assertNull(subscriber.next());
+  }
+
+  @Test
+  public void nonRandomAccessIterablesAreEmittedAndCompletedWithoutFurtherDemand() throws Exception {
+    Function<Integer, Iterable<?>> mapper = i -> i == 2 ? new LinkedList<>() :
+        new LinkedList<>(Arrays.asList(i, i + 10));
+    OfStageTest.CompletingSubscriber<Object> subscriber = subscribe(flatMap(mapper, 1, 2, 3));
+    subscriber.request(4);
+    assertElements(subscriber, 1, 11, 3, 13);
+    subscriber.awaitCompletion();
+    assertNull(subscriber.next());
+  }
+
+  @Test
+  public void upstreamFailureIsDeferredUntilTheRandomAccessListIsEmitted() throws Exception {
+    RuntimeException failure = new RuntimeException("failed");
+    Function<Integer, Iterable<?>> mapper = i -> Arrays.asList(i, i + 10);
+    Publisher<Object> publisher = engine.buildPublisher(graph(
+        new Stage.Concat(graph(new Stage.Of(Arrays.asList(1))), graph(new Stage.Failed(failure))),
+        new Stage.FlatMapIterable(mapper)));
+    OfStageTest.CompletingSubscriber<Object> subscriber = subscribe(publisher);
+    subscriber.request(1);
+    assertElements(subscriber, 1);
+    assertNull(subscriber.next());
+    subscriber.request(1);
+    assertElements(subscriber, 11);
+    assertEquals(subscriber.next(), failure);
+  }
+
+  private Publisher<Object> flatMap(Function<Integer, Iterable<?>> mapper, Integer... elements) {
+    Graph graph = graph(new Stage.Of(Arrays.asList(elements)), new Stage.FlatMapIterable(mapper));
+    return engine.buildPublisher(graph);
+  }
+
+  private static OfStageTest.CompletingSubscriber<Object> subscribe(Publisher<Object> publisher) {
+    OfStageTest.CompletingSubscriber<Object> subscriber = new OfStageTest.CompletingSubscriber<>();
+    publisher.subscribe(subscriber);
+    return subscriber;
+  }
+
+  private static void assertElements(OfStageTest.CompletingSubscriber<Object> subscriber,
+      Integer... elements) throws Exception {
+    for (Integer element : elements) {
+      assertEquals(subscriber.next(), element);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the heap retained by a long running flat map, to check that sub streams are torn down as they complete.
+ * <p>
+ * This isn't run as part of the tests. Run the main method, optionally passing the number of elements to flat map and
+ * how often to sample the heap. Each element is flat mapped to a sub stream of two elements, and the retained heap is
+ * sampled, after a full collection, as the stream runs. It should stay flat, rather than growing with the number of sub
+ * streams that have run.
+ * <p>
+ * The sub streams have a map stage after their of stage, since a sub stream that is just an of stage is emitted by the
+ * flat map stage directly, without building it, so it would never register any stages or ports with the graph.
+ */
+public class FlatMapMemoryBenchmark {
+
+  public static void main(String... args) throws Exception {
+    int elements = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int sampleEvery = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+    // The elements are generated as they're iterated, so that they don't count towards the retained heap
+    Iterable<Integer> source = () -> IntStream.range(0, elements).iterator();
+    Function<Integer, Integer> identity = i -> i;
+    Function<Integer, Graph> subStream = i -> new Graph(Arrays.asList(new Stage.Of(Arrays.asList(i, i)),
+        new Stage.Map(identity)));
+    long[] emitted = new long[1];
+    Function<Integer, Integer> sampler = i -> {
+      if (emitted[0]++ % (2L * sampleEvery) == 0) {
+        System.out.printf("%d sub streams: %.2fMB retained%n", i, retainedHeap() / 1024.0 / 1024.0);
+      }
+      return i;
+    };
+
+    long start = System.nanoTime();
+    Object count = engine.buildCompletion(new Graph(Arrays.asList(new Stage.Of(source), new Stage.FlatMap(subStream),
+        new Stage.Map(sampler), new Stage.Collect(Collectors.counting()))))
+        .toCompletableFuture().get(10, TimeUnit.MINUTES);
+    System.out.printf("%d elements in %dms%n", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private static long retainedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
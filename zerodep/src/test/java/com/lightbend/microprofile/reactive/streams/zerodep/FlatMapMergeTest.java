@@ -0,0 +1,108 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.run;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+public class FlatMapMergeTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+
+  @Test
+  public void elementsOfAllSubStreamsAreEmitted() throws Exception {
+    List<Integer> elements = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+    Function<Integer, Graph> mapper = i -> graph(new Stage.Of(Arrays.asList(i, i + 1000)));
+    List<Object> result = run(engine, graph(new Stage.Of(elements), new ZeroDepStage.FlatMapMerge(mapper, 4),
+        new Stage.Collect(Collectors.toList())));
+    assertEquals(result.size(), 200);
+    assertEquals(new HashSet<>(result), IntStream.range(0, 100).flatMap(i -> IntStream.of(i, i + 1000)).boxed()
+        .collect(Collectors.toSet()));
+  }
+
+  @Test
+  public void elementsAreEmittedWithoutWaitingForEarlierSubStreams() throws Exception {
+    Function<Integer, Graph> mapper = i -> i == 1 ? graph(new Stage.PublisherStage(neverCompletes(null))) :
+        graph(new Stage.Of(Arrays.asList(i)));
+    Object result = run(engine, graph(new Stage.Of(Arrays.asList(1, 2)), new ZeroDepStage.FlatMapMerge(mapper, 2),
+        Stage.FindFirst.INSTANCE));
+    assertEquals(result, Optional.of(2));
+  }
+
+  @Test
+  public void runningSubStreamsAreLimitedToTheParallelism() throws Exception {
+    AtomicInteger subStreams = new AtomicInteger();
+    Function<Integer, Graph> mapper = i -> {
+      subStreams.incrementAndGet();
+      return graph(new Stage.PublisherStage(neverCompletes(null)));
+    };
+    CompletableFuture<Object> result = engine.buildCompletion(graph(new Stage.Of(Arrays.asList(1, 2, 3, 4, 5)),
+        new ZeroDepStage.FlatMapMerge(mapper, 3), new Stage.Collect(Collectors.toList()))).toCompletableFuture();
+    Thread.sleep(100);
+    assertEquals(subStreams.get(), 3);
+    assertFalse(result.isDone());
+  }
+
+  @Test
+  public void aFailedSubStreamFailsTheStreamAndCancelsTheOthers() throws Exception {
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    Function<Integer, Graph> mapper = i -> i == 1 ? graph(new Stage.PublisherStage(neverCompletes(cancelled))) :
+        graph(new Stage.Failed(new RuntimeException("failed")));
+    try {
+      run(engine, graph(new Stage.Of(Arrays.asList(1, 2)), new ZeroDepStage.FlatMapMerge(mapper, 2),
+          new Stage.Collect(Collectors.toList())));
+      fail("Expected the stream to fail");
+    } catch (ExecutionException e) {
+      assertEquals(e.getCause().getMessage(), "failed");
+    }
+    cancelled.get(1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * A publisher that never emits or completes, and completes the given future, if any, when it's cancelled.
+   */
+  private static Publisher<Integer> neverCompletes(CompletableFuture<Void> cancelled) {
+    return subscriber -> subscriber.onSubscribe(new Subscription() {
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+        if (cancelled != null) {
+          cancelled.complete(null);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.SubscriberWithResult;
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the cost of building a graph from its stages each time, with building it from a compiled blueprint.
+ * <p>
+ * This isn't run as part of the tests. Run the main method, optionally passing the number of rounds and builds per
+ * round. The graph is a subscriber, which is built as soon as it's requested, but doesn't run until it's subscribed to,
+ * which it never is, so the time measured is the time to build the graph alone. A publisher isn't used, since
+ * publishers aren't built until they're subscribed to.
+ */
+public class GraphBlueprintBenchmark {
+
+  public static void main(String... args) {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int builds = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(Runnable::run);
+    Graph graph = graph();
+    GraphBlueprint blueprint = engine.compile(graph);
+
+    for (int round = 1; round <= rounds; round++) {
+      long graphNanos = time(builds, () -> engine.buildSubscriber(graph));
+      long blueprintNanos = time(builds, blueprint::buildSubscriber);
+      System.out.printf("round %d: graph %.2fus/build, blueprint %.2fus/build%n", round,
+          graphNanos / 1000.0 / builds, blueprintNanos / 1000.0 / builds);
+    }
+  }
+
+  private static long time(int builds, Supplier<SubscriberWithResult<?, ?>> supplier) {
+    // Keep what was built, so that the builds can't be optimised away
+    Object[] built = new Object[1];
+    long start = System.nanoTime();
+    for (int i = 0; i < builds; i++) {
+      built[0] = supplier.get();
+    }
+    long nanos = System.nanoTime() - start;
+    if (built[0] == null) {
+      throw new IllegalStateException("Nothing was built");
+    }
+    return nanos;
+  }
+
+  /**
+   * A subscriber graph of sixteen stages. The flat map completion stages keep the map stages from being fused, so that
+   * the building of ports is measured as well as the building of stages.
+   */
+  private static Graph graph() {
+    Function<Integer, Integer> plus1 = i -> i + 1;
+    Function<Integer, CompletionStage<?>> completed = CompletableFuture::completedFuture;
+    Predicate<Object> any = i -> true;
+    List<Stage> stages = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      stages.add(new Stage.Map(plus1));
+      stages.add(new Stage.FlatMapCompletionStage(completed));
+    }
+    stages.add(new Stage.Filter(() -> any));
+    stages.add(new Stage.Collect(Collectors.toList()));
+    return new Graph(stages);
+  }
+}
@@ -0,0 +1,96 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static org.testng.Assert.assertEquals;
+
+public class GraphBlueprintTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+
+  @Test
+  public void blueprintsCanBeBuiltMoreThanOnce() throws Exception {
+    Function<Integer, Integer> times2 = i -> i * 2;
+    GraphBlueprint blueprint = engine.compile(graph(new Stage.Of(Arrays.asList(1, 2, 3)), new Stage.Map(times2),
+        new Stage.Collect(Collectors.toList())));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(complete(blueprint), Arrays.asList(2, 4, 6));
+    }
+  }
+
+  @Test
+  public void predicatesAreSuppliedForEachBuild() throws Exception {
+    AtomicInteger supplied = new AtomicInteger();
+    // A distinct predicate, which only gives the right result if it isn't shared between builds
+    Stage.Filter distinct = new Stage.Filter(() -> {
+      supplied.incrementAndGet();
+      Set<Object> seen = new HashSet<>();
+      return (Predicate<Object>) seen::add;
+    });
+    GraphBlueprint blueprint = engine.compile(graph(new Stage.Of(Arrays.asList(1, 2, 1, 3)), distinct,
+        new Stage.Collect(Collectors.toList())));
+    assertEquals(complete(blueprint), Arrays.asList(1, 2, 3));
+    assertEquals(complete(blueprint), Arrays.asList(1, 2, 3));
+    assertEquals(supplied.get(), 2);
+  }
+
+  @Test
+  public void publishersBuiltFromABlueprintAreIndependent() throws Exception {
+    Function<Integer, Integer> plus1 = i -> i + 1;
+    GraphBlueprint blueprint = engine.compile(graph(new Stage.Of(Arrays.asList(1, 2, 3)), new Stage.Map(plus1)));
+    Publisher<Integer> first = blueprint.buildPublisher();
+    Publisher<Integer> second = blueprint.buildPublisher();
+    assertEquals(collect(second), Arrays.asList(2, 3, 4));
+    assertEquals(collect(first), Arrays.asList(2, 3, 4));
+  }
+
+  @Test
+  public void blueprintsOfConcatsRebuildEachInput() throws Exception {
+    Function<Integer, Integer> times10 = i -> i * 10;
+    Graph first = graph(new Stage.Of(Arrays.asList(1, 2)), new Stage.Map(times10));
+    Graph second = graph(new Stage.Of(Arrays.asList(3)));
+    GraphBlueprint blueprint = engine.compile(graph(new Stage.Concat(first, second),
+        new Stage.Collect(Collectors.toList())));
+    assertEquals(complete(blueprint), Arrays.asList(10, 20, 3));
+    assertEquals(complete(blueprint), Arrays.asList(10, 20, 3));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void closedBlueprintsCantBeBuiltAsPublishers() throws Exception {
+    engine.compile(graph(new Stage.Of(Arrays.asList(1)), new Stage.Collect(Collectors.toList()))).buildPublisher();
+  }
+
+  private static Object complete(GraphBlueprint blueprint) throws Exception {
+    return blueprint.buildCompletion().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  private List<Object> collect(Publisher<Integer> publisher) throws Exception {
+    return SynchronousGraphTest.run(engine, graph(new Stage.PublisherStage(publisher),
+        new Stage.Collect(Collectors.toList())));
+  }
+}
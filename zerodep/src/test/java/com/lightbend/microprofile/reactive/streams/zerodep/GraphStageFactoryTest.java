@@ -0,0 +1,179 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.eclipse.microprofile.reactive.streams.spi.UnsupportedStageException;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.run;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class GraphStageFactoryTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl().withSettings(EngineSettings.defaults()
+      .withStageFactory(Duplicate.class, (stage, context) -> new DuplicateStage<>(context))
+      .withStageFactory(Sum.class, (stage, context) -> new SumStage(context)));
+
+  @Test
+  public void customStagesWithAnInletAndOutletAreBuiltFromTheirFactory() throws Exception {
+    Object result = run(engine, graph(new Stage.Of(Arrays.asList(1, 2, 3)), new Duplicate(),
+        new Stage.Collect(Collectors.toList())));
+    assertEquals(result, Arrays.asList(1, 1, 2, 2, 3, 3));
+  }
+
+  @Test
+  public void customStagesWithoutAnOutletCompleteTheResultOfTheGraph() throws Exception {
+    Object result = run(engine, graph(new Stage.Of(Arrays.asList(1, 2, 3)), new Duplicate(), new Sum()));
+    assertEquals(result, 12);
+  }
+
+  @Test
+  public void failuresArePropagatedThroughCustomStages() throws Exception {
+    try {
+      run(engine, graph(new Stage.Failed(new RuntimeException("failed")), new Duplicate(), new Sum()));
+      fail("Expected the stream to fail");
+    } catch (ExecutionException e) {
+      assertEquals(e.getCause().getMessage(), "failed");
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedStageException.class)
+  public void customStagesWithoutAFactoryAreUnsupported() {
+    new ReactiveStreamsEngineImpl().buildCompletion(graph(new Stage.Of(Arrays.asList(1, 2, 3)), new Sum()));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void factoriesCantBeRegisteredForBuiltInStages() {
+    EngineSettings.defaults().withStageFactory(Stage.Map.class, (stage, context) -> new SumStage(context));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void factoriesCantBeRegisteredForBuiltInZeroDepStages() {
+    EngineSettings.defaults().withStageFactory(ZeroDepStage.FlatMapMerge.class,
+        (stage, context) -> new SumStage(context));
+  }
+
+  /**
+   * A custom stage that emits each element twice.
+   */
+  static final class Duplicate implements Stage {
+  }
+
+  /**
+   * A custom sink that sums integers.
+   */
+  static final class Sum implements Stage {
+    @Override
+    public boolean hasOutlet() {
+      return false;
+    }
+  }
+
+  private static final class DuplicateStage<T> extends GraphStage implements InletListener, OutletListener {
+    private final StageInlet<T> inlet;
+    private final StageOutlet<T> outlet;
+    private T duplicate;
+
+    DuplicateStage(StageContext context) {
+      super(context);
+      this.inlet = context.inlet();
+      this.outlet = context.outlet();
+
+      inlet.setListener(this);
+      outlet.setListener(this);
+    }
+
+    @Override
+    public void onPush() {
+      T element = inlet.grab();
+      duplicate = element;
+      outlet.push(element);
+    }
+
+    @Override
+    public void onUpstreamFinish() {
+      if (duplicate == null) {
+        outlet.complete();
+      }
+    }
+
+    @Override
+    public void onUpstreamFailure(Throwable error) {
+      outlet.fail(error);
+    }
+
+    @Override
+    public void onPull() {
+      if (duplicate != null) {
+        T element = duplicate;
+        duplicate = null;
+        outlet.push(element);
+        if (inlet.isClosed()) {
+          outlet.complete();
+        }
+      } else {
+        inlet.pull();
+      }
+    }
+
+    @Override
+    public void onDownstreamFinish() {
+      inlet.cancel();
+    }
+  }
+
+  private static final class SumStage extends GraphStage implements InletListener {
+    private final StageInlet<Integer> inlet;
+    private final CompletableFuture<Integer> result;
+    private int sum;
+
+    SumStage(StageContext context) {
+      super(context);
+      this.inlet = context.inlet();
+      this.result = context.result();
+
+      inlet.setListener(this);
+    }
+
+    @Override
+    protected void postStart() {
+      // It's possible that an earlier stage finished immediately, so check first
+      if (!inlet.isClosed()) {
+        inlet.pull();
+      }
+    }
+
+    @Override
+    public void onPush() {
+      sum += inlet.grab();
+      inlet.pull();
+    }
+
+    @Override
+    public void onUpstreamFinish() {
+      result.complete(sum);
+    }
+
+    @Override
+    public void onUpstreamFailure(Throwable error) {
+      result.completeExceptionally(error);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MutexExecutorTest {
+
+  private static final int TASKS = 100000;
+
+  @Test
+  public void directExecutorsRunTasksWithoutRecursingAfterEachBatch() {
+    List<Integer> ran = new ArrayList<>();
+    MutexExecutor mutex = new MutexExecutor(Runnable::run, 1);
+    mutex.execute(new Task(mutex, ran, 0));
+    assertEquals(ran.size(), TASKS);
+    for (int i = 0; i < TASKS; i++) {
+      assertEquals((int) ran.get(i), i);
+    }
+  }
+
+  @Test
+  public void tasksSubmittedToADirectExecutorRunWithMutualExclusion() {
+    MutexExecutor mutex = new MutexExecutor(Runnable::run, 2);
+    List<String> events = new ArrayList<>();
+    mutex.execute(() -> {
+      events.add("start outer");
+      assertTrue(mutex.isRunningOnCurrentThread());
+      mutex.execute(() -> events.add("inner"));
+      events.add("end outer");
+    });
+    assertFalse(mutex.isRunningOnCurrentThread());
+    assertEquals(events.toString(), "[start outer, end outer, inner]");
+  }
+
+  @Test
+  public void nestedDirectMutexExecutorsRunAllTasks() {
+    MutexExecutor outer = new MutexExecutor(Runnable::run, 3);
+    MutexExecutor inner = new MutexExecutor(outer, 2);
+    List<Integer> ran = new ArrayList<>();
+    inner.execute(new Task(inner, ran, 0));
+    assertEquals(ran.size(), TASKS);
+  }
+
+  /**
+   * Records that it ran, and submits the next task, until {@link #TASKS} tasks have run.
+   */
+  private static class Task implements Runnable {
+    private final Executor executor;
+    private final List<Integer> ran;
+    private final int index;
+
+    private Task(Executor executor, List<Integer> ran, int index) {
+      this.executor = executor;
+      this.ran = ran;
+      this.index = index;
+    }
+
+    @Override
+    public void run() {
+      ran.add(index);
+      if (index + 1 < TASKS) {
+        executor.execute(new Task(executor, ran, index + 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class OfStageTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+
+  @Test
+  public void randomAccessListIsEmittedAndCompletedWithoutFurtherDemand() throws Exception {
+    assertEmittedAndCompleted(new ArrayList<>(Arrays.asList(1, 2, 3)));
+  }
+
+  @Test
+  public void singleElementRandomAccessListIsEmittedAndCompleted() throws Exception {
+    assertEmittedAndCompleted(Collections.singletonList(1));
+  }
+
+  @Test
+  public void emptyRandomAccessListCompletesWithoutDemand() throws Exception {
+    assertEmittedAndCompleted(new ArrayList<>());
+  }
+
+  @Test
+  public void nonRandomAccessListIsEmittedAndCompletedWithoutFurtherDemand() throws Exception {
+    assertEmittedAndCompleted(new LinkedList<>(Arrays.asList(1, 2, 3)));
+  }
+
+  @Test
+  public void emptyNonRandomAccessListCompletesWithoutDemand() throws Exception {
+    assertEmittedAndCompleted(new LinkedList<>());
+  }
+
+  private void assertEmittedAndCompleted(List<Integer> elements) throws Exception {
+    Publisher<Object> publisher = engine.buildPublisher(graph(new Stage.Of(elements)));
+    CompletingSubscriber<Object> subscriber = new CompletingSubscriber<>();
+    publisher.subscribe(subscriber);
+    if (!elements.isEmpty()) {
+      subscriber.request(elements.size());
+    }
+    for (Integer element : elements) {
+      assertEquals(subscriber.next(), element);
+    }
+    subscriber.awaitCompletion();
+    assertNull(subscriber.next());
+  }
+
+  /**
+   * A requesting subscriber that also records when it's completed.
+   */
+  static class CompletingSubscriber<T> extends FlatMapCompletionStageTest.RequestingSubscriber<T> {
+    private final CompletableFuture<Void> completed = new CompletableFuture<>();
+
+    @Override
+    public void onComplete() {
+      completed.complete(null);
+    }
+
+    void awaitCompletion() throws Exception {
+      completed.get(1, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.run;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PrimitiveStageTest {
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl();
+  private final List<Integer> elements = IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList());
+
+  @Test
+  public void intStagesCollect() throws Exception {
+    Graph graph = graph(new Stage.Of(elements), new ZeroDepStage.MapToInt((Integer i) -> i),
+        new ZeroDepStage.IntMap(i -> i * 2), new ZeroDepStage.IntFilter(() -> i -> i % 3 == 0),
+        ZeroDepStage.IntCollect.sum());
+    assertEquals(result(graph), IntStream.rangeClosed(1, 100).map(i -> i * 2).filter(i -> i % 3 == 0).sum());
+    assertEquals(result(graph(new Stage.Of(elements), new ZeroDepStage.MapToInt((Integer i) -> i),
+        ZeroDepStage.IntCollect.max())), OptionalInt.of(100));
+    assertEquals(result(graph(new Stage.Of(elements), new ZeroDepStage.MapToInt((Integer i) -> i),
+        ZeroDepStage.IntCollect.count())), 100L);
+  }
+
+  @Test
+  public void longStagesCollect() throws Exception {
+    Graph graph = graph(new Stage.Of(elements), new ZeroDepStage.MapToLong((Integer i) -> i),
+        new ZeroDepStage.LongMap(l -> l * 1000000000L), ZeroDepStage.LongCollect.sum());
+    assertEquals(result(graph), 5050L * 1000000000L);
+    assertEquals(result(graph(new Stage.Of(elements), new ZeroDepStage.MapToLong((Integer i) -> i),
+        ZeroDepStage.LongCollect.min())), OptionalLong.of(1));
+  }
+
+  @Test
+  public void doubleStagesCollect() throws Exception {
+    Graph graph = graph(new Stage.Of(elements), new ZeroDepStage.MapToDouble((Integer i) -> i),
+        new ZeroDepStage.DoubleMap(d -> d / 2), ZeroDepStage.DoubleCollect.sum());
+    assertEquals(result(graph), 2525.0);
+    assertEquals(result(graph(new Stage.Of(elements), new ZeroDepStage.MapToDouble((Integer i) -> i),
+        new ZeroDepStage.DoubleMap(d -> -d), ZeroDepStage.DoubleCollect.min())), OptionalDouble.of(-100));
+  }
+
+  @Test
+  public void minAndMaxOfEmptyStreamsAreEmpty() throws Exception {
+    Stage empty = new Stage.Of(Collections.emptyList());
+    assertEquals(result(graph(empty, new ZeroDepStage.MapToInt((Integer i) -> i),
+        ZeroDepStage.IntCollect.min())), OptionalInt.empty());
+    assertEquals(result(graph(empty, new ZeroDepStage.MapToLong((Integer i) -> i),
+        ZeroDepStage.LongCollect.max())), OptionalLong.empty());
+    assertEquals(result(graph(empty, new ZeroDepStage.MapToDouble((Integer i) -> i),
+        ZeroDepStage.DoubleCollect.max())), OptionalDouble.empty());
+  }
+
+  @Test
+  public void valuesAreBoxedAsTheyLeaveARun() throws Exception {
+    Graph graph = graph(new Stage.Of(Arrays.asList(1L, 2L, 3L)), new ZeroDepStage.LongMap(l -> l + 1),
+        new Stage.Map((Long l) -> l * 10), new Stage.Collect(Collectors.toList()));
+    assertEquals(result(graph), Arrays.asList(20L, 30L, 40L));
+  }
+
+  @Test
+  public void runsOfDifferentTypesAreSeparate() throws Exception {
+    Graph graph = graph(new Stage.Of(elements), new ZeroDepStage.MapToInt((Integer i) -> i),
+        new ZeroDepStage.IntMapToObject(i -> (long) i), new ZeroDepStage.LongMap(l -> l * 3),
+        new ZeroDepStage.LongMapToObject(l -> l / 2.0), new ZeroDepStage.DoubleMap(d -> d * 2),
+        new Stage.Collect(Collectors.toList()));
+    List<Object> result = run(engine, graph);
+    assertEquals(result.size(), 100);
+    assertEquals(result.get(99), 300.0);
+  }
+
+  @Test
+  public void filterPredicatesAreSuppliedForEachBuild() throws Exception {
+    // A distinct predicate, which only gives the right result if it isn't shared by every build
+    Graph graph = graph(new Stage.Of(Arrays.asList(1, 2, 1, 3, 2)), new ZeroDepStage.MapToInt((Integer i) -> i),
+        new ZeroDepStage.IntFilter(() -> {
+          Set<Integer> seen = new HashSet<>();
+          return (IntPredicate) seen::add;
+        }), ZeroDepStage.IntCollect.count());
+    assertEquals(result(graph), 3L);
+    assertEquals(result(graph), 3L);
+  }
+
+  @Test
+  public void unboxingTheWrongTypeFailsTheStream() throws Exception {
+    Graph graph = graph(new Stage.Of(elements), new ZeroDepStage.LongMap(l -> l), ZeroDepStage.LongCollect.sum());
+    try {
+      result(graph);
+      throw new AssertionError("Expected the stream to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ClassCastException, e.getCause().toString());
+    }
+  }
+
+  private Object result(Graph graph) throws Exception {
+    return run(engine, graph);
+  }
+}
@@ -0,0 +1,154 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PublisherOutletTest {
+
+  @Test
+  public void synchronousPushesAreEmittedInBatchesOfTheBatchSize() {
+    assertEquals(elementsEmittedAfterCancel(4), 4);
+    assertEquals(elementsEmittedAfterCancel(16), 16);
+  }
+
+  @Test
+  public void everyPullYieldsWithABatchSizeOfZero() {
+    assertEquals(elementsEmittedAfterCancel(0), 0);
+  }
+
+  @Test
+  public void asynchronousPushesDontPullTheStageFromWithinItsOwnPush() throws Exception {
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl().withSettings(EngineSettings.defaults()
+        .withStageFactory(AsyncCounter.class, (stage, context) -> new AsyncCounterStage(context)));
+    Publisher<Object> publisher = engine.buildPublisher(graph(new AsyncCounter()));
+    CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE, false);
+    publisher.subscribe(subscriber);
+    List<Object> elements = subscriber.result.get(10, TimeUnit.SECONDS);
+    assertEquals(elements, IntStream.range(0, AsyncCounterStage.COUNT).boxed().collect(Collectors.toList()));
+  }
+
+  /**
+   * Run a stream with the given batch size whose subscriber cancels as soon as it receives the first element.
+   * <p>
+   * The cancel is submitted from the graph's own thread, so it only runs once the outlet yields, which means the number
+   * of elements that arrive after it's submitted is the number that the outlet emitted in a loop before yielding. The
+   * graph runs on a direct executor, so the stream has finished by the time subscribe returns.
+   */
+  private static int elementsEmittedAfterCancel(int batchSize) {
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(Runnable::run, EngineSettings.defaults()
+        .withOutletBatchSize(batchSize));
+    List<Integer> elements = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+    Publisher<Object> publisher = engine.buildPublisher(graph(new Stage.Of(elements)));
+    CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE, true);
+    publisher.subscribe(subscriber);
+    assertTrue(subscriber.cancelled);
+    return subscriber.elements.size() - 1;
+  }
+
+  private static class CollectingSubscriber implements Subscriber<Object> {
+    private final long demand;
+    private final boolean cancelOnFirst;
+    private final List<Object> elements = new ArrayList<>();
+    private final CompletableFuture<List<Object>> result = new CompletableFuture<>();
+    private boolean cancelled;
+    private Subscription subscription;
+
+    private CollectingSubscriber(long demand, boolean cancelOnFirst) {
+      this.demand = demand;
+      this.cancelOnFirst = cancelOnFirst;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(demand);
+    }
+
+    @Override
+    public void onNext(Object element) {
+      elements.add(element);
+      if (cancelOnFirst && elements.size() == 1) {
+        subscription.cancel();
+        cancelled = true;
+      }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      result.completeExceptionally(error);
+    }
+
+    @Override
+    public void onComplete() {
+      result.complete(elements);
+    }
+  }
+
+  /**
+   * A custom source that pushes each element asynchronously after it's pulled.
+   */
+  static final class AsyncCounter implements Stage {
+    @Override
+    public boolean hasInlet() {
+      return false;
+    }
+  }
+
+  private static final class AsyncCounterStage extends GraphStage implements OutletListener {
+    private static final int COUNT = 20;
+    private final StageOutlet<Integer> outlet;
+    private boolean pushing;
+    private int next;
+
+    private AsyncCounterStage(StageContext context) {
+      super(context);
+      this.outlet = context.outlet();
+      outlet.setListener(this);
+    }
+
+    @Override
+    public void onPull() {
+      if (pushing) {
+        throw new IllegalStateException("Pulled from within push");
+      }
+      CompletableFuture.runAsync(() -> {
+      }).thenRunAsync(() -> {
+        pushing = true;
+        outlet.push(next++);
+        pushing = false;
+        if (next == COUNT) {
+          outlet.complete();
+        }
+      }, executor());
+    }
+
+    @Override
+    public void onDownstreamFinish() {
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class RegistryTest {
+
+  @Test
+  public void iterationIsInRegistrationOrder() {
+    Registry<String> registry = new Registry<>();
+    registry.register(Arrays.asList("a", "b"));
+    registry.register(Arrays.asList("c"));
+    registry.register(Arrays.asList("d", "e"));
+    assertEquals(toList(registry), Arrays.asList("a", "b", "c", "d", "e"));
+  }
+
+  @Test
+  public void removedGroupsAreNotIterated() {
+    Registry<String> registry = new Registry<>();
+    Registry.Group<String> a = registry.register(Arrays.asList("a"));
+    Registry.Group<String> b = registry.register(Arrays.asList("b"));
+    Registry.Group<String> c = registry.register(Arrays.asList("c"));
+    b.remove();
+    assertEquals(toList(registry), Arrays.asList("a", "c"));
+    a.remove();
+    c.remove();
+    assertEquals(toList(registry), Arrays.asList());
+    // Removing twice has no effect, and the registry can still be registered to once empty
+    b.remove();
+    registry.register(Arrays.asList("d"));
+    assertEquals(toList(registry), Arrays.asList("d"));
+  }
+
+  @Test
+  public void removingTheCurrentGroupDuringIterationContinuesWithTheNextGroup() {
+    Registry<String> registry = new Registry<>();
+    registry.register(Arrays.asList("a"));
+    Registry.Group<String> b = registry.register(Arrays.asList("b1", "b2"));
+    registry.register(Arrays.asList("c"));
+    List<String> iterated = new ArrayList<>();
+    for (String element : registry) {
+      iterated.add(element);
+      if (element.equals("b1")) {
+        b.remove();
+      }
+    }
+    assertEquals(iterated, Arrays.asList("a", "b1", "b2", "c"));
+    assertEquals(toList(registry), Arrays.asList("a", "c"));
+  }
+
+  @Test
+  public void groupsRemovedDuringIterationBeforeTheyAreReachedAreSkipped() {
+    Registry<String> registry = new Registry<>();
+    registry.register(Arrays.asList("a"));
+    Registry.Group<String> b = registry.register(Arrays.asList("b"));
+    Registry.Group<String> c = registry.register(Arrays.asList("c"));
+    registry.register(Arrays.asList("d"));
+    List<String> iterated = new ArrayList<>();
+    for (String element : registry) {
+      iterated.add(element);
+      if (element.equals("a")) {
+        b.remove();
+        c.remove();
+      }
+    }
+    assertEquals(iterated, Arrays.asList("a", "d"));
+  }
+
+  @Test
+  public void clearingDuringIterationEndsItAfterTheCurrentGroup() {
+    Registry<String> registry = new Registry<>();
+    registry.register(Arrays.asList("a1", "a2"));
+    registry.register(Arrays.asList("b"));
+    List<String> iterated = new ArrayList<>();
+    for (String element : registry) {
+      iterated.add(element);
+      registry.clear();
+    }
+    assertEquals(iterated, Arrays.asList("a1", "a2"));
+    assertEquals(toList(registry), Arrays.asList());
+  }
+
+  private static List<String> toList(Registry<String> registry) {
+    List<String> list = new ArrayList<>();
+    registry.forEach(list::add);
+    return list;
+  }
+}
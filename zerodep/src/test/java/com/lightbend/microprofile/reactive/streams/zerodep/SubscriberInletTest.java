@@ -0,0 +1,106 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.SubscriberWithResult;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SubscriberInletTest {
+
+  private static final int ELEMENTS = 100000;
+
+  private final ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl()
+      .withSettings(EngineSettings.defaults().withIngressQueue(true));
+
+  @Test
+  public void elementsSignalledConcurrentlyThroughTheIngressQueueAreReceivedInOrder() throws Exception {
+    SubscriberWithResult<Integer, Object> subscriber = engine.buildSubscriber(
+        graph(new Stage.Collect(Collectors.toList())));
+    List<Integer> elements = IntStream.range(0, ELEMENTS).boxed().collect(Collectors.toList());
+
+    // Elements are signalled from the producer thread as soon as there's demand for them, while the graph drains the
+    // ingress queue on the engine's executor
+    Thread producer = new Thread(() -> produce(subscriber.getSubscriber(), ELEMENTS, 0));
+    producer.start();
+
+    assertEquals(subscriber.getResult().toCompletableFuture().get(10, TimeUnit.SECONDS), elements);
+    producer.join();
+  }
+
+  @Test
+  public void elementsSignalledWithoutDemandThroughTheIngressQueueFailTheStream() throws Exception {
+    SubscriberWithResult<Integer, Object> subscriber = engine.buildSubscriber(
+        graph(new Stage.Collect(Collectors.toList())));
+
+    // Signal far more elements than could ever be demanded, so that the ingress queue overflows
+    Thread producer = new Thread(() -> produce(subscriber.getSubscriber(), ELEMENTS, ELEMENTS));
+    producer.start();
+
+    try {
+      subscriber.getResult().toCompletableFuture().get(10, TimeUnit.SECONDS);
+      fail("Expected the stream to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+    }
+    producer.join();
+  }
+
+  /**
+   * Signal the given number of elements to the subscriber, and then complete it.
+   *
+   * @param excess The number of elements to signal beyond what has been demanded.
+   */
+  private static void produce(Subscriber<Integer> subscriber, int elements, long excess) {
+    AtomicLong demand = new AtomicLong(excess);
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    subscriber.onSubscribe(new Subscription() {
+      @Override
+      public void request(long n) {
+        demand.addAndGet(n);
+      }
+
+      @Override
+      public void cancel() {
+        cancelled.complete(null);
+      }
+    });
+    for (int i = 0; i < elements && !cancelled.isDone(); i++) {
+      while (demand.get() == 0) {
+        if (cancelled.isDone()) {
+          return;
+        }
+        Thread.yield();
+      }
+      demand.decrementAndGet();
+      subscriber.onNext(i);
+    }
+    if (!cancelled.isDone()) {
+      subscriber.onComplete();
+    }
+  }
+}
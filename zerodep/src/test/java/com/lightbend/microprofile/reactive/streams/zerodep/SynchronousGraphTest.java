@@ -0,0 +1,203 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Graph;
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SynchronousGraphTest {
+
+  // More threads than there may be processors, so that splits really do run concurrently
+  private final ForkJoinPool pool = new ForkJoinPool(8);
+  private final ReactiveStreamsEngineImpl parallelEngine = new ReactiveStreamsEngineImpl(pool,
+      EngineSettings.defaults().withParallelSynchronousGraphs(true, 1000));
+
+  @AfterClass
+  public void shutdownPool() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void parallelGraphsOfStatelessStagesProduceResultsInOrder() throws Exception {
+    List<Integer> elements = IntStream.range(0, 100000).boxed().collect(Collectors.toList());
+    Function<Integer, Integer> times2 = i -> i * 2;
+    Function<Integer, Iterable<?>> twice = i -> Arrays.asList(i, i);
+
+    List<Object> result = run(parallelEngine, graph(new Stage.Of(elements), new Stage.Map(times2),
+        new Stage.FlatMapIterable(twice), new Stage.Collect(Collectors.toList())));
+
+    assertEquals(result, elements.stream().flatMap(i -> Arrays.asList(i * 2, i * 2).stream())
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void statefulFiltersAreNotRunInParallel() throws Exception {
+    Graph graph = distinctSkipGraph();
+    List<Object> expected = IntStream.range(10, 50000).boxed().collect(Collectors.toList());
+    // The race between the splits doesn't always show, so run it a few times
+    for (int i = 0; i < 5; i++) {
+      assertEquals(run(parallelEngine, graph), expected);
+    }
+  }
+
+  @Test
+  public void graphsRunOnTheCallingThreadAreCompletedOnReturn() throws Exception {
+    Executor unused = command -> fail("Graph should not have been run on the executor");
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(unused,
+        EngineSettings.defaults().withSynchronousGraphsOnCallingThread(true));
+    Set<Thread> threads = new HashSet<>();
+    Function<Integer, Integer> times2 = i -> {
+      threads.add(Thread.currentThread());
+      return i * 2;
+    };
+
+    CompletableFuture<Object> result = engine.buildCompletion(graph(new Stage.Of(Arrays.asList(1, 2, 3)),
+        new Stage.Map(times2), Stage.FindFirst.INSTANCE)).toCompletableFuture();
+
+    assertTrue(result.isDone());
+    assertEquals(result.get(), Optional.of(2));
+    // Find first stops the run after the first element
+    assertEquals(threads.size(), 1);
+    assertSame(threads.iterator().next(), Thread.currentThread());
+  }
+
+  @Test
+  public void failuresOfGraphsRunOnTheCallingThreadCompleteTheResult() throws Exception {
+    ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(
+        command -> fail("Graph should not have been run on the executor"),
+        EngineSettings.defaults().withSynchronousGraphsOnCallingThread(true));
+    RuntimeException failure = new RuntimeException("failed");
+    Function<Integer, Integer> failing = i -> {
+      throw failure;
+    };
+
+    CompletableFuture<Object> result = engine.buildCompletion(graph(new Stage.Of(Arrays.asList(1, 2, 3)),
+        new Stage.Map(failing), new Stage.Collect(Collectors.toList()))).toCompletableFuture();
+
+    assertTrue(result.isDone());
+    try {
+      result.get();
+      fail("Expected failure");
+    } catch (ExecutionException e) {
+      assertSame(e.getCause(), failure);
+    }
+  }
+
+  @Test
+  public void graphsAreRunOnTheExecutorByDefault() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "graph-executor"));
+    try {
+      ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(executor, EngineSettings.defaults());
+      Set<String> threads = new HashSet<>();
+      Function<Integer, Integer> times2 = i -> {
+        threads.add(Thread.currentThread().getName());
+        return i * 2;
+      };
+
+      List<Object> result = run(engine, graph(new Stage.Of(Arrays.asList(1, 2, 3)), new Stage.Map(times2),
+          new Stage.Collect(Collectors.toList())));
+
+      assertEquals(result, Arrays.asList(2, 4, 6));
+      assertEquals(threads, new HashSet<>(Arrays.asList("graph-executor")));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void defaultEnginesDontRunGraphsOnTheCallingThread() throws Exception {
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    Function<Integer, Integer> record = i -> {
+      threads.add(Thread.currentThread());
+      return i;
+    };
+
+    List<Object> result = run(new ReactiveStreamsEngineImpl(), graph(new Stage.Of(Arrays.asList(1, 2, 3)),
+        new Stage.Map(record), new Stage.Collect(Collectors.toList())));
+
+    assertEquals(result, Arrays.asList(1, 2, 3));
+    assertFalse(threads.contains(Thread.currentThread()));
+  }
+
+  @Test
+  public void sourcesOfUnknownSizeAreNotRunInParallel() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "graph-executor"));
+    try {
+      ReactiveStreamsEngineImpl engine = new ReactiveStreamsEngineImpl(executor,
+          EngineSettings.defaults().withParallelSynchronousGraphs(true, 1000));
+      List<Integer> elements = IntStream.range(0, 100000).boxed().collect(Collectors.toList());
+      Iterable<Integer> unsized = elements::iterator;
+      Set<String> threads = ConcurrentHashMap.newKeySet();
+      Function<Integer, Integer> record = i -> {
+        threads.add(Thread.currentThread().getName());
+        return i;
+      };
+
+      List<Object> result = run(engine, graph(new Stage.Of(unsized), new Stage.Map(record),
+          new Stage.Collect(Collectors.toList())));
+
+      assertEquals(result, elements);
+      assertEquals(threads, new HashSet<>(Arrays.asList("graph-executor")));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static Graph distinctSkipGraph() {
+    List<Integer> elements = IntStream.range(0, 100000).boxed().collect(Collectors.toList());
+    Function<Integer, Integer> mod = i -> i % 50000;
+    // The same predicates that the builder uses for distinct and skip
+    Stage.Filter distinct = new Stage.Filter(() -> {
+      Set<Object> seen = new HashSet<>();
+      return (Predicate<Object>) seen::add;
+    });
+    Stage.Filter skip = new Stage.Filter(() -> {
+      int[] count = new int[1];
+      return (Predicate<Object>) element -> count[0]++ >= 10;
+    });
+    return graph(new Stage.Of(elements), new Stage.Map(mod), distinct, skip, new Stage.Collect(Collectors.toList()));
+  }
+
+  static Graph graph(Stage... stages) {
+    return new Graph(Arrays.asList(stages));
+  }
+
+  static <T> T run(ReactiveStreamsEngineImpl engine, Graph graph) throws Exception {
+    return engine.<T>buildCompletion(graph).toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+}
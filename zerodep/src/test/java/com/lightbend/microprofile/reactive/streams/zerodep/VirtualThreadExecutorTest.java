@@ -0,0 +1,102 @@
+/******************************************************************************
+ * Licensed under Public Domain (CC0)                                         *
+ *                                                                            *
+ * To the extent possible under law, the person who associated CC0 with       *
+ * this code has waived all copyright and related or neighboring              *
+ * rights to this code.                                                       *
+ *                                                                            *
+ * You should have received a copy of the CC0 legalcode along with this       *
+ * work. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.     *
+ ******************************************************************************/
+
+package com.lightbend.microprofile.reactive.streams.zerodep;
+
+import org.eclipse.microprofile.reactive.streams.spi.Stage;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.graph;
+import static com.lightbend.microprofile.reactive.streams.zerodep.SynchronousGraphTest.run;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class VirtualThreadExecutorTest {
+
+  @Test
+  public void virtualThreadsAreUnsupportedBeforeJdk21() {
+    if (virtualThreadsSupported()) {
+      throw new SkipException("Virtual threads are supported by this JDK");
+    }
+    try {
+      ReactiveStreamsEngineImpl.withVirtualThreads();
+      fail("Expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void graphsRunOnVirtualThreads() throws Exception {
+    if (!virtualThreadsSupported()) {
+      throw new SkipException("Virtual threads are not supported by this JDK");
+    }
+    Thread thread = threadOf(ReactiveStreamsEngineImpl.withVirtualThreads());
+    assertTrue(isVirtual(thread));
+    assertTrue(thread.getName().startsWith("reactive-streams-engine-"), thread.getName());
+  }
+
+  @Test
+  public void systemPropertyMakesDefaultEnginesRunGraphsOnVirtualThreads() throws Exception {
+    System.setProperty(ReactiveStreamsEngineImpl.VIRTUAL_THREADS_PROPERTY, "true");
+    try {
+      if (virtualThreadsSupported()) {
+        assertTrue(isVirtual(threadOf(new ReactiveStreamsEngineImpl())));
+      } else {
+        try {
+          new ReactiveStreamsEngineImpl();
+          fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+          // Expected
+        }
+      }
+    } finally {
+      System.clearProperty(ReactiveStreamsEngineImpl.VIRTUAL_THREADS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void defaultEnginesRunGraphsOnTheCommonPoolWithoutTheSystemProperty() throws Exception {
+    assertTrue(threadOf(new ReactiveStreamsEngineImpl()) instanceof ForkJoinWorkerThread);
+  }
+
+  /**
+   * Run a graph with the given engine, returning the thread that its stages were run on.
+   */
+  private static Thread threadOf(ReactiveStreamsEngineImpl engine) throws Exception {
+    Function<Integer, Thread> currentThread = i -> Thread.currentThread();
+    Object threads = run(engine, graph(new Stage.Of(Arrays.asList(1)), new Stage.Map(currentThread),
+        new Stage.Collect(Collectors.toList())));
+    assertEquals(((List<?>) threads).size(), 1);
+    return (Thread) ((List<?>) threads).get(0);
+  }
+
+  private static boolean virtualThreadsSupported() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static boolean isVirtual(Thread thread) throws Exception {
+    return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+  }
+}